@@ -0,0 +1,209 @@
+package com.carrotsearch.hppc.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates primitive specializations of the <code>KType</code>/<code>VType</code>
+ * templates under <code>src/main/templates</code>.
+ *
+ * <p>
+ * Templates are plain Java sources where <code>KType</code> and <code>VType</code>
+ * stand for the key and value primitive. A standalone <code>KType</code> token is
+ * replaced with the primitive (<code>long</code>), a token containing it is
+ * replaced with the capitalized name (<code>KTypeArrayList</code> becomes
+ * <code>LongArrayList</code>, <code>applyAsVType</code> becomes
+ * <code>applyAsInt</code>). Constants that differ per type are written as
+ * intrinsics (see {@link #intrinsic}).
+ * </p>
+ *
+ * <p>
+ * Usage: <code>TemplateProcessor &lt;templates dir&gt; &lt;output dir&gt;</code>.
+ * Only <code>int</code> and <code>long</code> are generated. The templates compare keys
+ * and values with <code>==</code> and hash them with <code>rehash</code>, which is
+ * wrong for <code>float</code> and <code>double</code> (<code>NaN</code> never equals
+ * itself, <code>-0.0 == 0.0</code>); these would need
+ * <code>floatToIntBits</code>-style equality and hashing, which the templates do not
+ * have. <code>byte</code>, <code>short</code> and <code>char</code> have no
+ * <code>java.util.function</code> operators (such as <code>IntBinaryOperator</code>)
+ * for the templates to use.
+ * </p>
+ */
+public class TemplateProcessor
+{
+    /**
+     * A primitive type the templates are specialized for.
+     */
+    private static final class Type
+    {
+        final String primitive;
+        final String name;
+        final String minValue;
+        final int bytes;
+
+        Type(String primitive, String name, String minValue, int bytes)
+        {
+            this.primitive = primitive;
+            this.name = name;
+            this.minValue = minValue;
+            this.bytes = bytes;
+        }
+    }
+
+    private final static Type [] TYPES = {
+        new Type("int", "Int", "Integer.MIN_VALUE", 4),
+        new Type("long", "Long", "Long.MIN_VALUE", 8),
+    };
+
+    /**
+     * Serial version UIDs of classes that were serialized before they were
+     * generated. Changing these breaks deserialization of existing streams.
+     */
+    private final static Map<String, String> SERIAL_VERSION_UIDS = new HashMap<String, String>();
+    static
+    {
+        SERIAL_VERSION_UIDS.put("LongIntOpenHashMap", "-7472991631259555949L");
+    }
+
+    private final static Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z_0-9]*");
+
+    private final File templatesDir;
+    private final File outputDir;
+
+    public TemplateProcessor(File templatesDir, File outputDir)
+    {
+        this.templatesDir = templatesDir;
+        this.outputDir = outputDir;
+    }
+
+    public static void main(String [] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: TemplateProcessor <templates dir> <output dir>");
+            System.exit(1);
+        }
+        new TemplateProcessor(new File(args[0]), new File(args[1])).process();
+    }
+
+    /**
+     * Generate all specializations of all templates.
+     */
+    public void process() throws IOException
+    {
+        final List<File> templates = new ArrayList<File>();
+        collect(templatesDir, templates);
+        Collections.sort(templates);
+
+        for (File template : templates)
+        {
+            final String relative = templatesDir.toURI().relativize(template.toURI()).getPath();
+            final String source = new String(Files.readAllBytes(template.toPath()), StandardCharsets.UTF_8);
+            final boolean hasKType = relative.contains("KType");
+            final boolean hasVType = relative.contains("VType");
+
+            for (Type k : (hasKType ? TYPES : new Type [] {null}))
+            {
+                for (Type v : (hasVType ? TYPES : new Type [] {null}))
+                {
+                    final String target = substitute(relative, k, v);
+                    final File output = new File(outputDir, target);
+                    final String className = output.getName().replaceAll("\\.java$", "");
+                    final String generated = substitute(source, k, v, className);
+
+                    output.getParentFile().mkdirs();
+                    Files.write(output.toPath(), generated.getBytes(StandardCharsets.UTF_8));
+                    System.out.println("Generated: " + target);
+                }
+            }
+        }
+    }
+
+    private static void collect(File dir, List<File> templates)
+    {
+        final File [] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        for (File f : files)
+        {
+            if (f.isDirectory())
+                collect(f, templates);
+            else if (f.getName().endsWith(".java"))
+                templates.add(f);
+        }
+    }
+
+    private static String substitute(String input, Type k, Type v)
+    {
+        return substitute(input, k, v, null);
+    }
+
+    /**
+     * Replace all template identifiers in <code>input</code>.
+     */
+    private static String substitute(String input, Type k, Type v, String className)
+    {
+        final StringBuffer output = new StringBuffer(input.length());
+        final Matcher m = IDENTIFIER.matcher(input);
+        while (m.find())
+        {
+            final String token = m.group();
+            String replacement = intrinsic(token, k, v, className);
+            if (replacement == null)
+            {
+                if (token.equals("KType") && k != null)
+                    replacement = k.primitive;
+                else if (token.equals("VType") && v != null)
+                    replacement = v.primitive;
+                else
+                {
+                    replacement = token;
+                    if (k != null) replacement = replacement.replace("KType", k.name);
+                    if (v != null) replacement = replacement.replace("VType", v.name);
+                }
+            }
+            m.appendReplacement(output, Matcher.quoteReplacement(replacement));
+        }
+        m.appendTail(output);
+        return output.toString();
+    }
+
+    /**
+     * Type-dependent constants:
+     * <ul>
+     * <li><code>KTYPE_MIN_VALUE</code> - the minimum value of the key type,</li>
+     * <li><code>KTYPE_BYTES</code>, <code>VTYPE_BYTES</code> - the size of the key
+     * (value) type in bytes,</li>
+     * <li><code>KTYPEVTYPE_SERIAL_VERSION_UID</code> - the serial version UID of the
+     * generated class,</li>
+     * <li><code>KTYPEVTYPE_DELTA_MAGIC</code> - the magic number of delta streams,
+     * the initials of the key and value types followed by <code>"D1"</code>.</li>
+     * </ul>
+     */
+    private static String intrinsic(String token, Type k, Type v, String className)
+    {
+        if (k != null && token.equals("KTYPE_MIN_VALUE"))
+            return k.minValue;
+        if (k != null && token.equals("KTYPE_BYTES"))
+            return Integer.toString(k.bytes);
+        if (v != null && token.equals("VTYPE_BYTES"))
+            return Integer.toString(v.bytes);
+        if (k != null && v != null && token.equals("KTYPEVTYPE_SERIAL_VERSION_UID"))
+        {
+            final String uid = SERIAL_VERSION_UIDS.get(className);
+            return uid != null ? uid : "1L";
+        }
+        if (k != null && v != null && token.equals("KTYPEVTYPE_DELTA_MAGIC"))
+        {
+            final int magic = (k.name.charAt(0) << 24) | (v.name.charAt(0) << 16) | ('D' << 8) | '1';
+            return String.format("0x%08X", magic);
+        }
+        return null;
+    }
+}
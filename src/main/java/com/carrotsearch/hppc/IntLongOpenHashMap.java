@@ -0,0 +1,2739 @@
+package com.carrotsearch.hppc;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongBinaryOperator;
+
+import com.carrotsearch.hppc.cursors.*;
+import com.carrotsearch.hppc.hash.MurmurHash3;
+import com.carrotsearch.hppc.predicates.*;
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A hash map of <code>int</code> to <code>long</code>, implemented using open
+ * addressing with linear probing for collision resolution.
+ *
+ * <p>
+ * The internal buffers of this implementation ({@link #keys}, {@link #values},
+ * {@link #allocated}) are always allocated to the nearest size that is a power of two. When
+ * the capacity exceeds the given load factor, the buffer size is doubled.
+ * </p>
+ *
+ * <p>
+ * Tables of up to {@link #LINEAR_CAPACITY} slots are <i>linear</i>: entries are packed
+ * at the start of the buffers and looked up with a linear scan, which is cheaper than
+ * hashing and probing for a handful of keys. A linear table is promoted to a hashed one
+ * when it is expanded past {@link #LINEAR_CAPACITY}.
+ * </p>
+ *
+ * <p>See {@link ObjectObjectOpenHashMap} class for API similarities and differences against Java
+ * Collections.
+ *
+ *
+ * <p><b>Important node.</b> The implementation uses power-of-two tables and linear
+ * probing, which may cause poor performance (many collisions) if hash values are
+ * not properly distributed. This implementation uses rehashing
+ * using {@link MurmurHash3}.</p>
+ *
+ * @author This code is inspired by the collaboration and implementation in the <a
+ *         href="http://fastutil.dsi.unimi.it/">fastutil</a> project.
+ */
+@javax.annotation.Generated(date = "2011-07-12T16:58:50+0200", value = "HPPC generated from: IntLongOpenHashMap.java")
+public class IntLongOpenHashMap
+        implements IntLongMap, Cloneable, Serializable
+{
+    /**
+     * Default capacity.
+     */
+    public final static int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Minimum capacity for the map.
+     */
+    public final static int MIN_CAPACITY = 4;
+
+    /**
+     * Default load factor.
+     */
+    public final static float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Maximum capacity of a <i>linear</i> table. Tables this small keep their entries
+     * packed in slots <code>0..assigned-1</code> and are searched with a linear scan
+     * instead of hashing; they are filled completely before they are expanded. Larger
+     * tables are hashed.
+     */
+    public final static int LINEAR_CAPACITY = 8;
+
+    /**
+     * Serialization version of the original (pre-fork) class layout. Fields added since
+     * are optional or transient, so older snapshots remain readable.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Hash-indexed array holding all keys.
+     *
+     * @see #values
+     */
+    public int [] keys;
+
+    /**
+     * Hash-indexed array holding all values associated to the keys
+     * stored in {@link #keys}.
+     *
+     * @see #keys
+     */
+    public long [] values;
+
+    /**
+     * Information if an entry (slot) in the {@link #values} table is allocated
+     * or empty.
+     *
+     * @see #assigned
+     */
+    public boolean [] allocated;
+
+    /**
+     * Cached number of assigned slots in {@link #allocated}.
+     */
+    public int assigned;
+
+    /**
+     * The load factor for this map (fraction of allocated slots
+     * before the buffers must be rehashed or reallocated).
+     */
+    public final float loadFactor;
+
+    /**
+     * Cached capacity threshold at which we must resize the buffers.
+     */
+    private int resizeThreshold;
+
+    /**
+     * The most recent slot accessed in {@link #containsKey} (required for
+     * {@link #lget}).
+     *
+     * @see #containsKey
+     * @see #lget
+     */
+    private int lastSlot;
+
+    /**
+     * Keys changed (put, updated or removed) since the last checkpoint, possibly
+     * with duplicates, or <code>null</code> if change tracking is disabled.
+     *
+     * @see #setChangeTracking
+     */
+    private int [] changeLog;
+
+    /**
+     * Number of entries in {@link #changeLog}.
+     */
+    private int changeLogSize;
+
+    /**
+     * Order-independent hash of all entries, kept up to date by all modifying
+     * methods.
+     *
+     * @see #hashCode()
+     */
+    private transient int fingerprint;
+
+    /**
+     * Value-to-key index or <code>null</code> if disabled.
+     *
+     * @see #setInverseIndex
+     */
+    private InverseIndex inverse;
+
+    /**
+     * Creates a hash map with the default capacity of {@value #DEFAULT_CAPACITY},
+     * load factor of {@value #DEFAULT_LOAD_FACTOR}.
+     *
+     * <p>See class notes about hash distribution importance.</p>
+     */
+    public IntLongOpenHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@value #DEFAULT_LOAD_FACTOR}.
+     *
+     * <p>See class notes about hash distribution importance.</p>
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     */
+    public IntLongOpenHashMap(int initialCapacity)
+    {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * <p>See class notes about hash distribution importance.</p>
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public IntLongOpenHashMap(int initialCapacity, float loadFactor)
+    {
+        initialCapacity = Math.max(initialCapacity, MIN_CAPACITY);
+
+        assert initialCapacity > 0
+                : "Initial capacity must be between (0, " + Integer.MAX_VALUE + "].";
+        assert loadFactor > 0 && loadFactor <= 1
+                : "Load factor must be between (0, 1].";
+
+        this.loadFactor = loadFactor;
+        allocateBuffers(roundCapacity(initialCapacity));
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public IntLongOpenHashMap(IntLongAssociativeContainer container)
+    {
+        this((int)(container.size() * (1 + DEFAULT_LOAD_FACTOR)));
+        putAll(container);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long put(int key, long value)
+    {
+        if (changeLog != null) logChange(key);
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        final int mask = allocated.length - 1;
+        int slot = firstSlot(key, mask);
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                final long oldValue = values[slot];
+                values[slot] = value;
+                fingerprint += rehash(value) - rehash(oldValue);
+                if (inverse != null) inverse.replace(key, oldValue, value);
+                return oldValue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        assigned++;
+        allocated[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        fingerprint += rehash(key) + rehash(value);
+        if (inverse != null) inverse.add(key, value);
+        return ((long) 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int putAll(
+            IntLongAssociativeContainer container)
+    {
+        final int count = this.assigned;
+        for (IntLongCursor c : container)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * Puts all key/value pairs from a given iterable into this map.
+     */
+    @Override
+    public final int putAll(
+            Iterable<? extends IntLongCursor> iterable)
+    {
+        final int count = this.assigned;
+        for (IntLongCursor c : iterable)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * <a href="http://trove4j.sourceforge.net">Trove</a>-inspired API method. An equivalent
+     * of the following code:
+     * <pre>
+     * if (!map.containsKey(key)) map.put(value);
+     * </pre>
+     *
+     * @param key The key of the value to check.
+     * @param value The value to put if <code>key</code> does not exist.
+     * @return <code>true</code> if <code>key</code> did not exist and <code>value</code>
+     * was placed in the map.
+     */
+    public final boolean putIfAbsent(int key, long value)
+    {
+        if (!containsKey(key))
+        {
+            put(key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * <a href="http://trove4j.sourceforge.net">Trove</a>-inspired API method. An equivalent
+     * of the following code:
+     * <pre>
+     * if (map.containsKey(key))
+     *    map.lset(map.lget() + additionValue);
+     * else
+     *    map.put(key, putValue);
+     * </pre>
+     *
+     * @param key The key of the value to adjust.
+     * @param putValue The value to put if <code>key</code> does not exist.
+     * @param additionValue The value to add to the existing value if <code>key</code> exists.
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public final long putOrAdd(int key, long putValue, long additionValue)
+    {
+        if (changeLog != null) logChange(key);
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        final int mask = allocated.length - 1;
+        int slot = firstSlot(key, mask);
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                final long oldValue = values[slot];
+                final long v = values[slot] += additionValue;
+                fingerprint += rehash(v) - rehash(oldValue);
+                if (inverse != null) inverse.replace(key, oldValue, v);
+                return v;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        assigned++;
+        allocated[slot] = true;
+        keys[slot] = key;
+        long v = values[slot] = putValue;
+        fingerprint += rehash(key) + rehash(v);
+        if (inverse != null) inverse.add(key, v);
+
+        return v;
+    }
+
+    /**
+     * Merge all key/value pairs of <code>other</code> into this map. Keys already
+     * present in this map get the value
+     * <code>combiner.applyAsLong(thisValue, otherValue)</code>, other keys are
+     * copied verbatim. Unlike {@link #putAll(IntLongAssociativeContainer)}, this
+     * scans <code>other</code>'s buffers directly (no cursors) and copies them in
+     * bulk if this map is empty.
+     *
+     * @return Returns the number of keys added to this map.
+     */
+    public final int mergeFrom(IntLongOpenHashMap other, LongBinaryOperator combiner)
+    {
+        final int count = this.assigned;
+
+        if (count == 0 && changeLog == null && inverse == null && other.keys.length >= this.keys.length)
+        {
+            // Same hash function, same table size: slots can be copied as they are.
+            allocateBuffers(other.keys.length);
+            System.arraycopy(other.keys, 0, keys, 0, keys.length);
+            System.arraycopy(other.values, 0, values, 0, values.length);
+            System.arraycopy(other.allocated, 0, allocated, 0, allocated.length);
+            this.assigned = other.assigned;
+            this.fingerprint = other.fingerprint;
+            this.lastSlot = -1;
+            return this.assigned;
+        }
+
+        final int [] keys = other.keys;
+        final long [] values = other.values;
+        final boolean [] states = other.allocated;
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+                merge(keys[i], values[i], combiner);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * Put <code>key</code> or combine its value with the existing one.
+     */
+    private void merge(int key, long value, LongBinaryOperator combiner)
+    {
+        if (changeLog != null) logChange(key);
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        final int mask = allocated.length - 1;
+        int slot = firstSlot(key, mask);
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                final long oldValue = values[slot];
+                values[slot] = combiner.applyAsLong(oldValue, value);
+                fingerprint += rehash(values[slot]) - rehash(oldValue);
+                if (inverse != null) inverse.replace(key, oldValue, values[slot]);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        assigned++;
+        allocated[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        fingerprint += rehash(key) + rehash(value);
+        if (inverse != null) inverse.add(key, value);
+    }
+
+    /**
+     * Sums values of keys present in more than one map.
+     */
+    private final static LongBinaryOperator SUM = new LongBinaryOperator()
+    {
+        public long applyAsLong(long left, long right)
+        {
+            return left + right;
+        }
+    };
+
+    /**
+     * Minimum number of slots in a single partition of {@link #combineAll}.
+     */
+    private final static int MIN_PARTITION_SLOTS = 1 << 12;
+
+    /**
+     * Combine all maps into a new map, summing values of keys present in more
+     * than one map. Uses the {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @see #combineAll(List, LongBinaryOperator, ExecutorService, int)
+     */
+    public static IntLongOpenHashMap combineAll(List<IntLongOpenHashMap> maps)
+    {
+        return combineAll(maps, SUM);
+    }
+
+    /**
+     * Combine all maps into a new map using the {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @see #combineAll(List, LongBinaryOperator, ExecutorService, int)
+     */
+    public static IntLongOpenHashMap combineAll(List<IntLongOpenHashMap> maps, LongBinaryOperator combiner)
+    {
+        return combineAll(maps, combiner,
+                ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Combine all maps into a new map. Values of keys present in more than one map are
+     * combined with <code>combiner</code>, in the order of <code>maps</code> (as if
+     * {@link #mergeFrom} was called for each map in turn). The input maps are not modified.
+     *
+     * <p>The target table is split into contiguous slot ranges (partitions). Every input
+     * is first scattered into per-partition buffers by the target slot of its keys, then
+     * all partitions are filled concurrently, each by a single task that never writes
+     * outside of its slot range. The few keys whose probe sequence runs past the end of
+     * their partition are merged serially at the end. If the inputs contain more distinct
+     * keys than the initial estimate (the size of the largest map), the process is
+     * repeated once with a table sized for the discovered upper bound.</p>
+     *
+     * @param executor The executor to run partition tasks on.
+     * @param parallelism The expected number of concurrently running tasks.
+     */
+    public static IntLongOpenHashMap combineAll(List<IntLongOpenHashMap> maps,
+            LongBinaryOperator combiner, ExecutorService executor, int parallelism)
+    {
+        int expected = 0;
+        for (IntLongOpenHashMap m : maps)
+        {
+            expected = Math.max(expected, m.size());
+        }
+
+        while (true)
+        {
+            final IntLongOpenHashMap result = new IntLongOpenHashMap(
+                    (int) Math.min((0x80000000 >>> 1), (long) Math.ceil(expected / DEFAULT_LOAD_FACTOR) + 1));
+
+            final int capacity = result.keys.length;
+            int partitions = Math.min(
+                    BitUtil.nextHighestPowerOfTwo(Math.max(1, parallelism) * 4),
+                    Math.max(1, capacity / MIN_PARTITION_SLOTS));
+            if (partitions <= 1)
+            {
+                for (IntLongOpenHashMap m : maps)
+                {
+                    result.mergeFrom(m, combiner);
+                }
+                return result;
+            }
+
+            final int shift = Integer.numberOfTrailingZeros(capacity / partitions);
+
+            // Scatter each input into per-partition buffers.
+            final List<Future<PartitionedInput>> scattered = new ArrayList<Future<PartitionedInput>>();
+            for (final IntLongOpenHashMap m : maps)
+            {
+                final int parts = partitions;
+                scattered.add(executor.submit(new Callable<PartitionedInput>()
+                {
+                    public PartitionedInput call()
+                    {
+                        return new PartitionedInput(m, capacity - 1, shift, parts);
+                    }
+                }));
+            }
+            final PartitionedInput [] inputs = new PartitionedInput [maps.size()];
+            for (int i = 0; i < inputs.length; i++)
+            {
+                inputs[i] = await(scattered.get(i));
+            }
+
+            // Fill partitions concurrently.
+            final List<Future<PartitionOverflow>> filled = new ArrayList<Future<PartitionOverflow>>();
+            for (int p = 0; p < partitions; p++)
+            {
+                final int partition = p;
+                filled.add(executor.submit(new Callable<PartitionOverflow>()
+                {
+                    public PartitionOverflow call()
+                    {
+                        return result.fillPartition(inputs, partition, shift, combiner);
+                    }
+                }));
+            }
+
+            final PartitionOverflow [] overflows = new PartitionOverflow [partitions];
+            int placed = 0;
+            int overflowed = 0;
+            for (int p = 0; p < partitions; p++)
+            {
+                overflows[p] = await(filled.get(p));
+                placed += overflows[p].placed;
+                overflowed += overflows[p].keys.size();
+            }
+
+            final long upperBound = (long) placed + overflowed;
+            if (upperBound > result.resizeThreshold && expected < upperBound)
+            {
+                // Too many distinct keys for this table; retry with an upper bound.
+                expected = (int) Math.min(Integer.MAX_VALUE, upperBound);
+                continue;
+            }
+
+            result.assigned = placed;
+            for (int p = 0; p < partitions; p++)
+            {
+                result.fingerprint += overflows[p].fingerprint;
+            }
+            for (int p = 0; p < partitions; p++)
+            {
+                final int [] keys = overflows[p].keys.buffer;
+                final long [] values = overflows[p].values.buffer;
+                for (int i = 0; i < overflows[p].keys.size(); i++)
+                {
+                    result.merge(keys[i], values[i], combiner);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Merge all entries of the given partition into the slot range of that partition.
+     * Entries that do not fit before the end of the range (or that arrive after the
+     * range reached the load factor) are returned.
+     */
+    private PartitionOverflow fillPartition(
+            PartitionedInput [] inputs, int partition, int shift, LongBinaryOperator combiner)
+    {
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] allocated = this.allocated;
+        final int end = (partition + 1) << shift;
+        final int limit = (int) ((1 << shift) * loadFactor);
+
+        final PartitionOverflow overflow = new PartitionOverflow();
+        for (PartitionedInput input : inputs)
+        {
+            final int from = input.offsets[partition];
+            final int to = input.offsets[partition + 1];
+            for (int i = from; i < to; i++)
+            {
+                final int key = input.keys[i];
+                final long value = input.values[i];
+
+                // Don't probe a (nearly) full partition; the table is too small anyway.
+                int slot = overflow.placed < limit ? input.slots[i] : end;
+                while (slot < end && allocated[slot])
+                {
+                    if (((key) == (keys[slot])))
+                        break;
+                    slot++;
+                }
+
+                if (slot == end)
+                {
+                    overflow.keys.add(key);
+                    overflow.values.add(value);
+                }
+                else if (allocated[slot])
+                {
+                    final long oldValue = values[slot];
+                    values[slot] = combiner.applyAsLong(oldValue, value);
+                    overflow.fingerprint += rehash(values[slot]) - rehash(oldValue);
+                }
+                else
+                {
+                    overflow.placed++;
+                    allocated[slot] = true;
+                    keys[slot] = key;
+                    values[slot] = value;
+                    overflow.fingerprint += rehash(key) + rehash(value);
+                }
+            }
+        }
+        return overflow;
+    }
+
+    /**
+     * Entries of one input map, grouped by target partition (two-pass histogram
+     * and scatter), with their precomputed target slots.
+     */
+    private final static class PartitionedInput
+    {
+        final int [] keys;
+        final long [] values;
+        final int [] slots;
+        final int [] offsets;
+
+        PartitionedInput(IntLongOpenHashMap map, int mask, int shift, int partitions)
+        {
+            final int [] mapKeys = map.keys;
+            final long [] mapValues = map.values;
+            final boolean [] states = map.allocated;
+
+            this.offsets = new int [partitions + 1];
+            for (int i = 0; i < states.length; i++)
+            {
+                if (states[i])
+                    offsets[((rehash(mapKeys[i]) & mask) >>> shift) + 1]++;
+            }
+            for (int p = 0; p < partitions; p++)
+            {
+                offsets[p + 1] += offsets[p];
+            }
+
+            final int size = offsets[partitions];
+            this.keys = new int [size];
+            this.values = new long [size];
+            this.slots = new int [size];
+
+            final int [] next = Arrays.copyOf(offsets, partitions);
+            for (int i = 0; i < states.length; i++)
+            {
+                if (states[i])
+                {
+                    final int slot = rehash(mapKeys[i]) & mask;
+                    final int j = next[slot >>> shift]++;
+                    keys[j] = mapKeys[i];
+                    values[j] = mapValues[i];
+                    slots[j] = slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of keys placed in a partition (and their contribution to
+     * {@link #fingerprint}) and the keys that did not fit.
+     */
+    private final static class PartitionOverflow
+    {
+        int placed;
+        int fingerprint;
+        final IntArrayList keys = new IntArrayList();
+        final LongArrayList values = new LongArrayList();
+    }
+
+    private static <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Expand the internal storage buffers (capacity) or rehash current
+     * keys and values if there are a lot of deleted slots.
+     */
+    private void expandAndRehash()
+    {
+        final int [] oldKeys = this.keys;
+        final long [] oldValues = this.values;
+        final boolean [] oldStates = this.allocated;
+
+        assert assigned >= resizeThreshold;
+        allocateBuffers(nextCapacity(keys.length));
+
+        if (allocated.length <= LINEAR_CAPACITY)
+        {
+            // The old table is linear too: entries stay packed.
+            System.arraycopy(oldKeys, 0, keys, 0, oldKeys.length);
+            System.arraycopy(oldValues, 0, values, 0, oldValues.length);
+            System.arraycopy(oldStates, 0, allocated, 0, oldStates.length);
+            lastSlot = -1;
+            return;
+        }
+
+        /*
+         * Rehash all assigned slots from the old hash table. Deleted
+         * slots are discarded.
+         */
+        final int mask = allocated.length - 1;
+        for (int i = 0; i < oldStates.length; i++)
+        {
+            if (oldStates[i])
+            {
+                final int key = oldKeys[i];
+                final long value = oldValues[i];
+
+                /*  */
+                /*  */
+
+                int slot = rehash(key) & mask;
+                while (allocated[slot])
+                {
+                    if (((key) == (keys[slot])))
+                    {
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+
+                allocated[slot] = true;
+                keys[slot] = key;
+                values[slot] = value;
+            }
+        }
+
+        /*
+         * The number of assigned items does not change, the number of deleted
+         * items is zero since we have resized.
+         */
+        lastSlot = -1;
+    }
+
+    /**
+     * Allocate internal buffers for a given capacity.
+     *
+     * @param capacity New capacity (must be a power of two).
+     */
+    private void allocateBuffers(int capacity)
+    {
+        this.keys = new int [capacity];
+        this.values = new long [capacity];
+        this.allocated = new boolean [capacity];
+
+        this.resizeThreshold = capacity <= LINEAR_CAPACITY ? capacity : (int) (capacity * loadFactor);
+    }
+
+    /**
+     * @return Returns the slot of <code>key</code> in a linear table or <code>-1</code>.
+     */
+    private int linearSlot(int key)
+    {
+        final int [] keys = this.keys;
+        for (int i = 0; i < assigned; i++)
+        {
+            if (((key) == (keys[i])))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The first slot to probe when inserting <code>key</code> (the table must not be
+     * full): its hash slot or, in a linear table, the slot of the key or the first free
+     * slot.
+     */
+    private int firstSlot(int key, int mask)
+    {
+        if (mask < LINEAR_CAPACITY)
+        {
+            final int slot = linearSlot(key);
+            return slot >= 0 ? slot : assigned;
+        }
+        return rehash(key) & mask;
+    }
+
+    /**
+     * Move all entries of a linear table to its first slots.
+     */
+    private void packLinear()
+    {
+        int n = 0;
+        for (int i = 0; i < allocated.length; i++)
+        {
+            if (allocated[i])
+            {
+                if (i != n)
+                {
+                    keys[n] = keys[i];
+                    values[n] = values[i];
+                    allocated[n] = true;
+                    allocated[i] = false;
+                }
+                n++;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long remove(int key)
+    {
+        final int mask = allocated.length - 1;
+        int slot;
+        if (mask < LINEAR_CAPACITY)
+        {
+            if ((slot = linearSlot(key)) < 0)
+                return ((long) 0);
+        }
+        else
+        {
+            slot = rehash(key) & mask;
+        }
+
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                if (changeLog != null) logChange(key);
+                assigned--;
+                long v = values[slot];
+                fingerprint -= rehash(key) + rehash(v);
+                if (inverse != null) inverse.remove(key, v);
+                shiftConflictingKeys(slot);
+                return v;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return ((long) 0);
+    }
+
+    /**
+     * Shift all the slot-conflicting keys allocated to (and including) <code>slot</code>.
+     * In a linear table, the last entry is moved to <code>slot</code> instead
+     * ({@link #assigned} must already be decremented).
+     */
+    protected final void shiftConflictingKeys(int slotCurr)
+    {
+        if (allocated.length <= LINEAR_CAPACITY)
+        {
+            final int last = assigned;
+            keys[slotCurr] = keys[last];
+            values[slotCurr] = values[last];
+            allocated[last] = false;
+            return;
+        }
+
+        // Copied nearly verbatim from fastutil's impl.
+        final int mask = allocated.length - 1;
+        int slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (allocated[slotCurr])
+            {
+                slotOther = rehash(keys[slotCurr]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    // we're on the right of the original slot.
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    // we've wrapped around.
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (!allocated[slotCurr])
+                break;
+
+            // Shift key/value pair.
+            keys[slotPrev] = keys[slotCurr];
+            values[slotPrev] = values[slotCurr];
+        }
+
+        allocated[slotPrev] = false;
+
+        /*  */
+        /*  */
+    }
+
+    /**
+     * {@link #removeAll(IntContainer)} removes keys one by one if the container holds
+     * fewer than <code>capacity >>> BULK_REMOVAL_SHIFT</code> keys; larger removals
+     * clear all victims first and then repair the table in one pass.
+     */
+    private final static int BULK_REMOVAL_SHIFT = 4;
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Large removals are done in bulk: all victims are removed first and the
+     * table is compacted in a single pass afterwards.</p>
+     */
+    @Override
+    public final int removeAll(IntContainer container)
+    {
+        final int before = this.assigned;
+
+        if (container.size() < (keys.length >>> BULK_REMOVAL_SHIFT))
+        {
+            for (IntCursor cursor : container)
+            {
+                remove(cursor.value);
+            }
+            return before - this.assigned;
+        }
+
+        // Find all victims before touching the table (lookups need intact probe sequences).
+        final IntArrayList slots = new IntArrayList(Math.min(container.size(), assigned));
+        for (IntCursor cursor : container)
+        {
+            if (containsKey(cursor.value))
+                slots.add(lastSlot);
+        }
+
+        return unlinkAll(slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Matching entries are found in a single sweep, then removed and the table is
+     * compacted in one more pass, rather than shifting conflicting keys after every
+     * removal.</p>
+     */
+    @Override
+    public final int removeAll(IntPredicate predicate)
+    {
+        final int [] keys = this.keys;
+        final boolean [] states = this.allocated;
+
+        // The predicate may read this map, so the table must stay intact until all
+        // victims are known.
+        final IntArrayList slots = new IntArrayList();
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i] && predicate.apply(keys[i]))
+                slots.add(i);
+        }
+
+        return unlinkAll(slots);
+    }
+
+    /**
+     * Remove the entries at all given slots (duplicates are ignored) and compact the
+     * table once.
+     *
+     * @return Returns the number of removed entries.
+     */
+    private int unlinkAll(IntArrayList slots)
+    {
+        final int before = this.assigned;
+        if (slots.isEmpty())
+            return 0;
+
+        final int gap = freeSlot();
+        final int [] buffer = slots.buffer;
+        for (int i = 0; i < slots.size(); i++)
+        {
+            if (allocated[buffer[i]])
+                unlink(buffer[i]);
+        }
+        compact(gap);
+
+        return before - this.assigned;
+    }
+
+    /**
+     * Remove the entry at <code>slot</code> without repairing the probe sequences
+     * running through it. {@link #compact} must be called after all removals.
+     */
+    private void unlink(int slot)
+    {
+        final int key = keys[slot];
+        final long value = values[slot];
+        if (changeLog != null) logChange(key);
+        fingerprint -= rehash(key) + rehash(value);
+        if (inverse != null) inverse.remove(key, value);
+        allocated[slot] = false;
+        assigned--;
+    }
+
+    /**
+     * @return Returns the first free slot or <code>-1</code> (a full linear table).
+     */
+    private int freeSlot()
+    {
+        for (int i = 0; i < allocated.length; i++)
+        {
+            if (!allocated[i])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Repair the table after any number of {@link #unlink}s in a single pass: every
+     * remaining entry moves back to the first free slot of its probe sequence. Entries
+     * are visited in probe order, starting after <code>gap</code>, a slot that was free
+     * before the removals (so no probe sequence wraps over it).
+     */
+    private void compact(int gap)
+    {
+        lastSlot = -1;
+        if (allocated.length <= LINEAR_CAPACITY)
+        {
+            packLinear();
+            return;
+        }
+
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+        final int mask = states.length - 1;
+
+        for (int i = (gap + 1) & mask; i != gap; i = (i + 1) & mask)
+        {
+            if (states[i])
+            {
+                int slot = rehash(keys[i]) & mask;
+                while (slot != i && states[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+
+                if (slot != i)
+                {
+                    keys[slot] = keys[i];
+                    values[slot] = values[i];
+                    states[slot] = true;
+                    states[i] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> Use the following snippet of code to check for key existence
+     * first and then retrieve the value if it exists.</p>
+     * <pre>
+     * if (map.containsKey(key))
+     *   value = map.lget();
+     * </pre>
+     */
+    @Override
+    public long get(int key)
+    {
+        final int mask = allocated.length - 1;
+        if (mask < LINEAR_CAPACITY)
+        {
+            final int slot = linearSlot(key);
+            return slot >= 0 ? values[slot] : ((long) 0);
+        }
+
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                return values[slot];
+            }
+
+            slot = (slot + 1) & mask;
+        }
+        return ((long) 0);
+    }
+
+    /**
+     * Returns the last value saved in a call to {@link #containsKey}.
+     *
+     * @see #containsKey
+     */
+    public long lget()
+    {
+        assert lastSlot >= 0 : "Call containsKey() first.";
+        assert allocated[lastSlot] : "Last call to exists did not have any associated value.";
+
+        return values[lastSlot];
+    }
+
+    /**
+     * Sets the value corresponding to the key saved in the last
+     * call to {@link #containsKey}, if and only if the key exists
+     * in the map already.
+     *
+     * @see #containsKey
+     * @return Returns the previous value stored under the given key.
+     */
+    public long lset(long key)
+    {
+        assert lastSlot >= 0 : "Call containsKey() first.";
+        assert allocated[lastSlot] : "Last call to exists did not have any associated value.";
+
+        if (changeLog != null) logChange(keys[lastSlot]);
+        final long previous = values[lastSlot];
+        values[lastSlot] = key;
+        fingerprint += rehash(key) - rehash(previous);
+        if (inverse != null) inverse.replace(keys[lastSlot], previous, key);
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Saves the associated value for fast access using {@link #lget}
+     * or {@link #lset}.</p>
+     * <pre>
+     * if (map.containsKey(key))
+     *   value = map.lget();
+     * </pre>
+     * or, for example to modify the value at the given key without looking up
+     * its slot twice:
+     * <pre>
+     * if (map.containsKey(key))
+     *   map.lset(map.lget() + 1);
+     * </pre>
+     */
+    @Override
+    public boolean containsKey(int key)
+    {
+        final int mask = allocated.length - 1;
+        if (mask < LINEAR_CAPACITY)
+            return (lastSlot = linearSlot(key)) >= 0;
+
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                lastSlot = slot;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        lastSlot = -1;
+        return false;
+    }
+
+    /**
+     * Enables or disables the value-to-key index. When enabled, the index is built from
+     * the current entries and kept up to date by all modifying methods, so that
+     * {@link #containsValue}, {@link #getKeyForValue} and {@link #removeValue} take
+     * constant (expected) time instead of a scan over all slots. The index is meant for
+     * maps with (mostly) unique values; every entry is indexed, but keys sharing a value
+     * share a probe sequence. Modifying {@link #keys} or {@link #values} directly
+     * invalidates the index.
+     */
+    public void setInverseIndex(boolean enabled)
+    {
+        if (enabled && inverse == null)
+        {
+            inverse = new InverseIndex(Math.max(MIN_CAPACITY, assigned), loadFactor);
+            for (int i = 0; i < allocated.length; i++)
+            {
+                if (allocated[i]) inverse.add(keys[i], values[i]);
+            }
+        }
+        else if (!enabled)
+        {
+            inverse = null;
+        }
+    }
+
+    /**
+     * @return Returns <code>true</code> if the value-to-key index is enabled.
+     * @see #setInverseIndex
+     */
+    public boolean isInverseIndex()
+    {
+        return inverse != null;
+    }
+
+    /**
+     * @return Returns <code>true</code> if any key is associated with <code>value</code>.
+     * This is a linear scan unless the inverse index is enabled.
+     * @see #setInverseIndex
+     */
+    public boolean containsValue(long value)
+    {
+        if (inverse != null)
+            return inverse.slotOf(value) >= 0;
+
+        return findValue(value) >= 0;
+    }
+
+    /**
+     * Returns a key associated with <code>value</code> or <code>0</code> (use
+     * {@link #containsValue} to distinguish). If more than one key is associated
+     * with <code>value</code>, any of them is returned. This is a linear scan unless
+     * the inverse index is enabled.
+     *
+     * @see #setInverseIndex
+     */
+    public int getKeyForValue(long value)
+    {
+        if (inverse != null)
+        {
+            final int slot = inverse.slotOf(value);
+            return slot >= 0 ? inverse.keys[slot] : ((int) 0);
+        }
+
+        final int slot = findValue(value);
+        return slot >= 0 ? keys[slot] : ((int) 0);
+    }
+
+    /**
+     * Removes all keys associated with <code>value</code>.
+     *
+     * @return Returns the number of removed keys.
+     * @see #setInverseIndex
+     */
+    public int removeValue(long value)
+    {
+        if (inverse != null)
+        {
+            final int before = this.assigned;
+            for (int slot; (slot = inverse.slotOf(value)) >= 0;)
+            {
+                remove(inverse.keys[slot]);
+            }
+            return before - this.assigned;
+        }
+
+        return removeAllValues(new LongPredicate()
+        {
+            public boolean apply(long v)
+            {
+                return ((v) == (value));
+            }
+        });
+    }
+
+    /**
+     * Removes all keys whose values satisfy <code>predicate</code>.
+     *
+     * @return Returns the number of removed keys.
+     */
+    public int removeAllValues(LongPredicate predicate)
+    {
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        // See removeAll(IntPredicate): find all victims before touching the table.
+        final IntArrayList slots = new IntArrayList();
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i] && predicate.apply(values[i]))
+                slots.add(i);
+        }
+
+        return unlinkAll(slots);
+    }
+
+    /**
+     * @return Returns the first slot holding <code>value</code> or <code>-1</code>.
+     */
+    private int findValue(long value)
+    {
+        final boolean [] allocated = this.allocated;
+        final long [] values = this.values;
+
+        for (int slot = 0; slot < allocated.length; slot++)
+        {
+            if (allocated[slot] && ((value) == (values[slot])))
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * An open addressing table (linear probing) of <code>(value, key)</code> pairs
+     * hashed by value.
+     */
+    private final static class InverseIndex implements Cloneable, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        long [] values;
+        int [] keys;
+        boolean [] allocated;
+        int assigned;
+        int resizeThreshold;
+        final float loadFactor;
+
+        InverseIndex(int expected, float loadFactor)
+        {
+            this.loadFactor = loadFactor;
+            allocateBuffers(BitUtil.nextHighestPowerOfTwo((int) Math.ceil(expected / loadFactor) + 1));
+        }
+
+        private void allocateBuffers(int capacity)
+        {
+            this.values = new long [capacity];
+            this.keys = new int [capacity];
+            this.allocated = new boolean [capacity];
+            this.resizeThreshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+        }
+
+        /**
+         * @return Returns the first slot holding <code>value</code> or <code>-1</code>.
+         */
+        int slotOf(long value)
+        {
+            final int mask = allocated.length - 1;
+            int slot = rehash(value) & mask;
+            while (allocated[slot])
+            {
+                if (((value) == (values[slot])))
+                    return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void add(int key, long value)
+        {
+            if (assigned >= resizeThreshold)
+            {
+                final long [] oldValues = this.values;
+                final int [] oldKeys = this.keys;
+                final boolean [] oldStates = this.allocated;
+                allocateBuffers(oldStates.length << 1);
+                for (int i = 0; i < oldStates.length; i++)
+                {
+                    if (oldStates[i]) insert(oldKeys[i], oldValues[i]);
+                }
+            }
+
+            insert(key, value);
+            assigned++;
+        }
+
+        private void insert(int key, long value)
+        {
+            final int mask = allocated.length - 1;
+            int slot = rehash(value) & mask;
+            while (allocated[slot])
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            allocated[slot] = true;
+            values[slot] = value;
+            keys[slot] = key;
+        }
+
+        void remove(int key, long value)
+        {
+            final int mask = allocated.length - 1;
+            int slot = rehash(value) & mask;
+            while (allocated[slot])
+            {
+                if (((value) == (values[slot])) && ((key) == (keys[slot])))
+                {
+                    assigned--;
+                    shiftConflictingKeys(slot);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            assert false : "Entry not indexed: " + key;
+        }
+
+        void replace(int key, long oldValue, long newValue)
+        {
+            if (!((oldValue) == (newValue)))
+            {
+                remove(key, oldValue);
+                add(key, newValue);
+            }
+        }
+
+        void clear()
+        {
+            assigned = 0;
+            Arrays.fill(allocated, false);
+        }
+
+        private void shiftConflictingKeys(int slotCurr)
+        {
+            final int mask = allocated.length - 1;
+            int slotPrev, slotOther;
+            while (true)
+            {
+                slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+                while (allocated[slotCurr])
+                {
+                    slotOther = rehash(values[slotCurr]) & mask;
+                    if (slotPrev <= slotCurr)
+                    {
+                        // we're on the right of the original slot.
+                        if (slotPrev >= slotOther || slotOther > slotCurr)
+                            break;
+                    }
+                    else
+                    {
+                        // we've wrapped around.
+                        if (slotPrev >= slotOther && slotOther > slotCurr)
+                            break;
+                    }
+                    slotCurr = (slotCurr + 1) & mask;
+                }
+
+                if (!allocated[slotCurr])
+                    break;
+
+                // Shift the pair.
+                values[slotPrev] = values[slotCurr];
+                keys[slotPrev] = keys[slotCurr];
+            }
+
+            allocated[slotPrev] = false;
+        }
+
+        @Override
+        public InverseIndex clone()
+        {
+            try
+            {
+                final InverseIndex cloned = (InverseIndex) super.clone();
+                cloned.values = values.clone();
+                cloned.keys = keys.clone();
+                cloned.allocated = allocated.clone();
+                return cloned;
+            }
+            catch (CloneNotSupportedException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Number of keys hashed ahead of probing in {@link #joinRange}.
+     */
+    private final static int JOIN_BATCH = 64;
+
+    /**
+     * Apply <code>procedure</code> to every key present in both this map and
+     * <code>other</code>, with the value from this map and the value from <code>other</code>
+     * (in this order). The smaller of the two maps is scanned and the larger one probed.
+     *
+     * @return Returns the number of keys present in both maps.
+     */
+    public final int innerJoin(IntLongOpenHashMap other, IntLongLongProcedure procedure)
+    {
+        if (other.size() < this.size())
+            return other.joinRange(this, procedure, true, 0, other.allocated.length);
+        return joinRange(other, procedure, false, 0, allocated.length);
+    }
+
+    /**
+     * A parallel version of {@link #innerJoin(IntLongOpenHashMap, IntLongLongProcedure)}.
+     * The slots of the smaller map are split into contiguous ranges which are
+     * joined concurrently. <code>procedure</code> must be thread-safe and neither map may
+     * be modified until this method returns.
+     *
+     * @param executor The executor to run join tasks on.
+     * @param parallelism The expected number of concurrently running tasks.
+     * @return Returns the number of keys present in both maps.
+     */
+    public final int innerJoin(final IntLongOpenHashMap other, final IntLongLongProcedure procedure,
+            ExecutorService executor, int parallelism)
+    {
+        final boolean swapped = other.size() < this.size();
+        final IntLongOpenHashMap scanned = swapped ? other : this;
+        final IntLongOpenHashMap probed = swapped ? this : other;
+
+        final int slots = scanned.allocated.length;
+        final int ranges = Math.max(1, Math.min(Math.max(1, parallelism) * 4, slots / MIN_PARTITION_SLOTS));
+        final List<Future<Integer>> tasks = new ArrayList<Future<Integer>>();
+        for (int r = 0; r < ranges; r++)
+        {
+            final int from = (int) ((long) slots * r / ranges);
+            final int to = (int) ((long) slots * (r + 1) / ranges);
+            tasks.add(executor.submit(new Callable<Integer>()
+            {
+                public Integer call()
+                {
+                    return scanned.joinRange(probed, procedure, swapped, from, to);
+                }
+            }));
+        }
+
+        int matches = 0;
+        for (Future<Integer> task : tasks)
+        {
+            matches += await(task);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns all keys present in both this map and <code>other</code>, in no
+     * particular order.
+     */
+    public final IntArrayList intersect(IntLongOpenHashMap other)
+    {
+        final IntArrayList result = new IntArrayList(Math.min(size(), other.size()));
+        innerJoin(other, new IntLongLongProcedure()
+        {
+            public void apply(int key, long value, long otherValue)
+            {
+                result.add(key);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Removes all keys of this map that are not present in <code>container</code>.
+     *
+     * @return Returns the number of removed keys.
+     */
+    public final int retainAll(final IntLookupContainer container)
+    {
+        return removeAll(new IntPredicate()
+        {
+            public boolean apply(int key)
+            {
+                return !container.contains(key);
+            }
+        });
+    }
+
+    /**
+     * Probe <code>other</code> with all keys of this map in slots <code>[from, to)</code>.
+     * Keys are gathered and hashed in batches before probing so that the probes
+     * of a batch are independent of each other and their cache misses can overlap.
+     *
+     * @param swapped If <code>true</code>, <code>procedure</code> gets the value from
+     *            <code>other</code> first.
+     */
+    private int joinRange(IntLongOpenHashMap other, IntLongLongProcedure procedure,
+            boolean swapped, int from, int to)
+    {
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        final int [] otherKeys = other.keys;
+        final long [] otherValues = other.values;
+        final boolean [] otherStates = other.allocated;
+        final int otherMask = otherStates.length - 1;
+
+        int matches = 0;
+        if (otherMask < LINEAR_CAPACITY)
+        {
+            for (int i = from; i < to; i++)
+            {
+                final int slot;
+                if (states[i] && (slot = other.linearSlot(keys[i])) >= 0)
+                {
+                    if (swapped)
+                        procedure.apply(keys[i], otherValues[slot], values[i]);
+                    else
+                        procedure.apply(keys[i], values[i], otherValues[slot]);
+                    matches++;
+                }
+            }
+            return matches;
+        }
+
+        final int [] batchKeys = new int [JOIN_BATCH];
+        final long [] batchValues = new long [JOIN_BATCH];
+        final int [] batchSlots = new int [JOIN_BATCH];
+
+        int i = from;
+        while (i < to)
+        {
+            int n = 0;
+            for (; i < to && n < JOIN_BATCH; i++)
+            {
+                if (states[i])
+                {
+                    batchKeys[n] = keys[i];
+                    batchValues[n] = values[i];
+                    batchSlots[n] = rehash(keys[i]) & otherMask;
+                    n++;
+                }
+            }
+
+            for (int j = 0; j < n; j++)
+            {
+                final int key = batchKeys[j];
+                int slot = batchSlots[j];
+                while (otherStates[slot])
+                {
+                    if (((key) == (otherKeys[slot])))
+                    {
+                        if (swapped)
+                            procedure.apply(key, otherValues[slot], batchValues[j]);
+                        else
+                            procedure.apply(key, batchValues[j], otherValues[slot]);
+                        matches++;
+                        break;
+                    }
+                    slot = (slot + 1) & otherMask;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Marker at the start of every delta written by {@link #writeDelta}.
+     */
+    public final static int DELTA_MAGIC = 0x494C4431;
+
+    /**
+     * Size of an upsert record in a delta (key and value).
+     */
+    private final static int UPSERT_BYTES = 4 + 8;
+
+    /**
+     * Size of a delete record in a delta (key only).
+     */
+    private final static int DELETE_BYTES = 4;
+
+    /**
+     * Size of the I/O buffer used for deltas (a multiple of a record's size).
+     */
+    private final static int DELTA_BUFFER_SIZE = UPSERT_BYTES * DELETE_BYTES * 512;
+
+    /**
+     * Size of the per-partition I/O buffers of {@link #exportPartitions} (the delta
+     * header and a multiple of an upsert's size).
+     */
+    private final static int PARTITION_BUFFER_SIZE = 3 * 4 + UPSERT_BYTES * 256;
+
+    /**
+     * Enables or disables change tracking. When enabled, every key modified by
+     * {@link #put}, {@link #putOrAdd}, {@link #lset}, {@link #remove} (and other
+     * methods built on these or on {@link #shiftConflictingKeys}) is recorded until
+     * the next {@link #writeDelta} or {@link #checkpoint()}. Disabling tracking drops
+     * all recorded changes.
+     */
+    public void setChangeTracking(boolean enabled)
+    {
+        if (enabled && changeLog == null)
+        {
+            changeLog = new int [DEFAULT_CAPACITY];
+        }
+        else if (!enabled)
+        {
+            changeLog = null;
+        }
+        changeLogSize = 0;
+    }
+
+    /**
+     * @return Returns <code>true</code> if changes are tracked.
+     * @see #setChangeTracking
+     */
+    public boolean isChangeTracking()
+    {
+        return changeLog != null;
+    }
+
+    /**
+     * Forget all changes recorded so far (for example after a full snapshot has been
+     * written).
+     */
+    public void checkpoint()
+    {
+        changeLogSize = 0;
+    }
+
+    /**
+     * @return Returns the number of distinct keys changed since the last checkpoint.
+     */
+    public int changedKeys()
+    {
+        return changeLog == null ? 0 : compactChangeLog();
+    }
+
+    /**
+     * Write all changes since the last checkpoint and start a new checkpoint. The
+     * delta holds the current value of every changed key still present in the map
+     * (upserts) followed by every changed key no longer present (deletes):
+     * <pre>
+     * int magic ({@link #DELTA_MAGIC}), int upserts, int deletes,
+     * upserts x (int key, long value), deletes x (int key)
+     * </pre>
+     * All numbers are big-endian.
+     *
+     * @return Returns the number of records written.
+     * @see #applyDelta
+     */
+    public int writeDelta(WritableByteChannel out) throws IOException
+    {
+        assert changeLog != null : "Change tracking is disabled.";
+
+        final int n = compactChangeLog();
+        final int [] changed = this.changeLog;
+
+        final int [] slots = new int [n];
+        int upserts = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (containsKey(changed[i]))
+            {
+                slots[i] = lastSlot;
+                upserts++;
+            }
+            else
+            {
+                slots[i] = -1;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(DELTA_BUFFER_SIZE);
+        buffer.putInt(DELTA_MAGIC);
+        buffer.putInt(upserts);
+        buffer.putInt(n - upserts);
+        for (int i = 0; i < n; i++)
+        {
+            if (slots[i] >= 0)
+            {
+                if (buffer.remaining() < UPSERT_BYTES) writeFully(out, buffer);
+                buffer.putInt(changed[i]);
+                buffer.putLong(values[slots[i]]);
+            }
+        }
+        for (int i = 0; i < n; i++)
+        {
+            if (slots[i] < 0)
+            {
+                if (buffer.remaining() < DELETE_BYTES) writeFully(out, buffer);
+                buffer.putInt(changed[i]);
+            }
+        }
+        writeFully(out, buffer);
+
+        lastSlot = -1;
+        changeLogSize = 0;
+        return n;
+    }
+
+    /**
+     * Apply a delta written by {@link #writeDelta}. Reads exactly one delta from
+     * <code>in</code>.
+     *
+     * @return Returns the number of records applied.
+     */
+    public int applyDelta(ReadableByteChannel in) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(DELTA_BUFFER_SIZE);
+        buffer.limit(12);
+        readFully(in, buffer);
+        if (buffer.getInt() != DELTA_MAGIC)
+            throw new IOException("Not a " + getClass().getSimpleName() + " delta.");
+        final int upserts = buffer.getInt();
+        final int deletes = buffer.getInt();
+
+        for (int left = upserts; left > 0;)
+        {
+            final int chunk = Math.min(left, DELTA_BUFFER_SIZE / UPSERT_BYTES);
+            buffer.clear();
+            buffer.limit(chunk * UPSERT_BYTES);
+            readFully(in, buffer);
+            for (int i = 0; i < chunk; i++)
+            {
+                put(buffer.getInt(), buffer.getLong());
+            }
+            left -= chunk;
+        }
+
+        for (int left = deletes; left > 0;)
+        {
+            final int chunk = Math.min(left, DELTA_BUFFER_SIZE / DELETE_BYTES);
+            buffer.clear();
+            buffer.limit(chunk * DELETE_BYTES);
+            readFully(in, buffer);
+            for (int i = 0; i < chunk; i++)
+            {
+                remove(buffer.getInt());
+            }
+            left -= chunk;
+        }
+
+        return upserts + deletes;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (in.read(buffer) < 0)
+                throw new EOFException("Truncated delta.");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Receives the entries of one partition from {@link #partition}.
+     */
+    public interface PartitionSink
+    {
+        /**
+         * Called once for every partition, in partition order. Entries of the
+         * partition are at <code>keys[start..start+length)</code> and
+         * <code>values[start..start+length)</code>; the arrays are shared by all
+         * partitions and are only valid for the duration of the call.
+         */
+        public void partition(int partition, int [] keys, long [] values, int start, int length);
+    }
+
+    /**
+     * Split all entries into <code>n</code> partitions by key hash and pass each
+     * partition to <code>sink</code>. Entries are grouped in two passes over the
+     * table (a histogram of partition sizes, then a scatter into a single pair of
+     * arrays), so there is no per-entry cursor or per-partition buffer growth.
+     *
+     * <p>The partition of a key depends only on the key and <code>n</code> (see
+     * {@link #partitionOf}), not on this map's capacity, so maps on different nodes
+     * route equal keys to equal partitions.</p>
+     */
+    public void partition(int n, PartitionSink sink)
+    {
+        assert n > 0 : "Number of partitions must be positive: " + n;
+
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        final int [] offsets = new int [n + 1];
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+                offsets[partitionOf(keys[i], n) + 1]++;
+        }
+        for (int p = 0; p < n; p++)
+        {
+            offsets[p + 1] += offsets[p];
+        }
+
+        final int [] partitionedKeys = new int [assigned];
+        final long [] partitionedValues = new long [assigned];
+        final int [] next = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+            {
+                final int j = next[partitionOf(keys[i], n)]++;
+                partitionedKeys[j] = keys[i];
+                partitionedValues[j] = values[i];
+            }
+        }
+
+        for (int p = 0; p < n; p++)
+        {
+            sink.partition(p, partitionedKeys, partitionedValues, offsets[p], offsets[p + 1] - offsets[p]);
+        }
+    }
+
+    /**
+     * Split all entries into <code>out.length</code> partitions (as in
+     * {@link #partition}) and write partition <code>p</code> to <code>out[p]</code>.
+     * Every channel receives exactly one delta (see {@link #writeDelta}) holding only
+     * upserts, so the receiving side can load it with {@link #applyDelta}.
+     *
+     * <p>One pass over the table counts the entries of each partition (for the delta
+     * headers); a second pass scatters entries into a small, fixed-size buffer per
+     * partition, flushed to its channel whenever it fills. Memory use depends on the
+     * number of partitions only, not on the size of the map.</p>
+     *
+     * @return Returns the number of records written (the size of this map).
+     */
+    public int exportPartitions(WritableByteChannel [] out) throws IOException
+    {
+        final int n = out.length;
+        assert n > 0 : "No channels.";
+
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        final int [] counts = new int [n];
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+                counts[partitionOf(keys[i], n)]++;
+        }
+
+        final ByteBuffer [] buffers = new ByteBuffer [n];
+        for (int p = 0; p < n; p++)
+        {
+            buffers[p] = ByteBuffer.allocate(PARTITION_BUFFER_SIZE);
+            buffers[p].putInt(DELTA_MAGIC);
+            buffers[p].putInt(counts[p]);
+            buffers[p].putInt(0);
+        }
+
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+            {
+                final int p = partitionOf(keys[i], n);
+                final ByteBuffer buffer = buffers[p];
+                if (buffer.remaining() < UPSERT_BYTES) writeFully(out[p], buffer);
+                buffer.putInt(keys[i]);
+                buffer.putLong(values[i]);
+            }
+        }
+
+        for (int p = 0; p < n; p++)
+        {
+            writeFully(out[p], buffers[p]);
+        }
+
+        return assigned;
+    }
+
+    /**
+     * @return Returns the partition of <code>key</code> among <code>n</code>
+     * partitions. This maps the full 32 bits of {@link #rehash} onto
+     * <code>[0, n)</code> (multiply and shift), so any <code>n</code> is fine and the
+     * partition is not correlated with the low bits used for slot addressing.
+     */
+    public static int partitionOf(int key, int n)
+    {
+        return (int) (((rehash(key) & 0xffffffffL) * n) >>> 32);
+    }
+
+    /**
+     * Record a changed key. Duplicates are dropped when the log fills up, so it
+     * stays proportional to the number of distinct changed keys.
+     */
+    private void logChange(int key)
+    {
+        if (changeLogSize == changeLog.length)
+        {
+            if (compactChangeLog() > changeLog.length >>> 1)
+                changeLog = Arrays.copyOf(changeLog, changeLog.length << 1);
+        }
+        changeLog[changeLogSize++] = key;
+    }
+
+    /**
+     * Sort the change log and drop duplicate keys.
+     *
+     * @return Returns the number of distinct changed keys.
+     */
+    private int compactChangeLog()
+    {
+        final int [] log = this.changeLog;
+        Arrays.sort(log, 0, changeLogSize);
+
+        int n = 0;
+        for (int i = 0; i < changeLogSize; i++)
+        {
+            if (n == 0 || log[n - 1] != log[i])
+                log[n++] = log[i];
+        }
+        return changeLogSize = n;
+    }
+
+    /**
+     * Round the capacity to the next allowed value.
+     */
+    protected int roundCapacity(int requestedCapacity)
+    {
+        // Maximum positive integer that is a power of two.
+        if (requestedCapacity > (0x80000000 >>> 1))
+            return (0x80000000 >>> 1);
+
+        return Math.max(MIN_CAPACITY, BitUtil.nextHighestPowerOfTwo(requestedCapacity));
+    }
+
+    /**
+     * Return the next possible capacity, counting from the current buffers'
+     * size.
+     */
+    protected int nextCapacity(int current)
+    {
+        assert current > 0 && Long.bitCount(current) == 1
+                : "Capacity must be a power of two.";
+        assert ((current << 1) > 0)
+                : "Maximum capacity exceeded (" + (0x80000000 >>> 1) + ").";
+
+        if (current < MIN_CAPACITY / 2) current = MIN_CAPACITY / 2;
+        return current << 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Does not release internal buffers.</p>
+     */
+    @Override
+    public void clear()
+    {
+        if (changeLog != null)
+        {
+            for (int i = 0; i < allocated.length; i++)
+            {
+                if (allocated[i]) logChange(keys[i]);
+            }
+        }
+
+        assigned = 0;
+        fingerprint = 0;
+        if (inverse != null) inverse.clear();
+
+        // States are always cleared.
+        Arrays.fill(allocated, false);
+
+        /*  */
+
+        /*  */
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Note that an empty container may still contain many deleted keys (that occupy buffer
+     * space). Adding even a single element to such a container may cause rehashing.</p>
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The hash code is maintained incrementally by all modifying methods (it is the
+     * sum of <code>rehash(key) + rehash(value)</code> over all entries), so this method
+     * takes constant time. Modifying {@link #keys} or {@link #values} directly invalidates
+     * it.</p>
+     */
+    @Override
+    public int hashCode()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Recompute {@link #fingerprint} from scratch.
+     */
+    private int computeFingerprint()
+    {
+        int h = 0;
+        for (int i = 0; i < allocated.length; i++)
+        {
+            if (allocated[i])
+                h += rehash(keys[i]) + rehash(values[i]);
+        }
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj != null)
+        {
+            if (obj == this) return true;
+
+            if (obj instanceof IntLongOpenHashMap)
+            {
+                return equalEntries((IntLongOpenHashMap) obj);
+            }
+
+            if (obj instanceof IntLongMap)
+            {
+                /*  */
+                IntLongMap other = (IntLongMap) obj;
+                if (other.size() == this.size())
+                {
+                    for (IntLongCursor c : this)
+                    {
+                        if (other.containsKey(c.key))
+                        {
+                            long v = other.get(c.key);
+                            if (((c.value) == (v)))
+                            {
+                                continue;
+                            }
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compare with another map of the same class: fails fast on a size or fingerprint
+     * mismatch, otherwise probes <code>other</code> once per entry of this map.
+     */
+    private boolean equalEntries(IntLongOpenHashMap other)
+    {
+        if (other.assigned != this.assigned || other.fingerprint != this.fingerprint)
+            return false;
+
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        final int [] otherKeys = other.keys;
+        final long [] otherValues = other.values;
+        final boolean [] otherStates = other.allocated;
+        final int mask = otherStates.length - 1;
+
+        for (int i = 0; i < states.length; i++)
+        {
+            if (!states[i])
+                continue;
+
+            final int key = keys[i];
+            int slot = mask < LINEAR_CAPACITY ? other.linearSlot(key) : rehash(key) & mask;
+            while (true)
+            {
+                if (slot < 0 || !otherStates[slot])
+                    return false;
+                if (((key) == (otherKeys[slot])))
+                    break;
+                slot = (slot + 1) & mask;
+            }
+
+            if (!((values[i]) == (otherValues[slot])))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Restore {@link #fingerprint}, which is not serialized, and pack small tables
+     * written before they were linear.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        this.fingerprint = computeFingerprint();
+        if (allocated.length <= LINEAR_CAPACITY)
+            packLinear();
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}.
+     */
+    private final class EntryIterator extends AbstractIterator<IntLongCursor>
+    {
+        private final IntLongCursor cursor;
+
+        public EntryIterator()
+        {
+            cursor = new IntLongCursor();
+            cursor.index = -1;
+        }
+
+        @Override
+        protected IntLongCursor fetch()
+        {
+            int i = cursor.index + 1;
+            final int max = keys.length;
+            while (i < max && !allocated[i])
+            {
+                i++;
+            }
+
+            if (i == max)
+                return done();
+
+            cursor.index = i;
+            cursor.key = keys[i];
+            cursor.value = values[i];
+
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<IntLongCursor> iterator()
+    {
+        return new EntryIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends IntLongProcedure> T forEach(T procedure)
+    {
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+                procedure.apply(keys[i], values[i]);
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Copy all keys and their associated values to the given arrays, sorted by
+     * key (in ascending, signed order). Live slots are gathered directly from
+     * the buffers and sorted with an LSD radix sort that carries values along,
+     * so the cost is linear in {@link #size()}.
+     *
+     * @param keysOut Target array for keys, at least {@link #size()} elements.
+     * @param valuesOut Target array for values, at least {@link #size()} elements.
+     * @return Returns the number of entries written ({@link #size()}).
+     */
+    public int toSortedArrays(int [] keysOut, long [] valuesOut)
+    {
+        final int size = this.assigned;
+        if (keysOut.length < size || valuesOut.length < size)
+            throw new IllegalArgumentException("Output arrays must hold at least " + size + " elements.");
+
+        final int [] keys = this.keys;
+        final long [] values = this.values;
+        final boolean [] states = this.allocated;
+
+        int n = 0;
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+            {
+                keysOut[n] = keys[i];
+                valuesOut[n] = values[i];
+                n++;
+            }
+        }
+
+        radixSort(keysOut, valuesOut, n);
+        return n;
+    }
+
+    /**
+     * Applies <code>procedure</code> to all entries in ascending order of keys.
+     *
+     * @see #toSortedArrays
+     */
+    public <T extends IntLongProcedure> T forEachSorted(T procedure)
+    {
+        final int [] keys = new int [assigned];
+        final long [] values = new long [assigned];
+        final int n = toSortedArrays(keys, values);
+
+        for (int i = 0; i < n; i++)
+        {
+            procedure.apply(keys[i], values[i]);
+        }
+        return procedure;
+    }
+
+    /**
+     * LSD radix sort (8 bits per pass) of the first <code>n</code> elements of
+     * <code>keys</code>, permuting <code>values</code> along. Passes over bytes
+     * that are identical in all keys are skipped.
+     */
+    static void radixSort(int [] keys, long [] values, int n)
+    {
+        if (n < 2)
+            return;
+
+        // One histogram per byte, collected in a single pass. The sign bit is
+        // flipped so that negative keys sort first.
+        final int bytes = 4;
+        final int [][] counts = new int [bytes][256];
+        for (int i = 0; i < n; i++)
+        {
+            final int k = keys[i] ^ Integer.MIN_VALUE;
+            for (int b = 0; b < bytes; b++)
+            {
+                counts[b][(int) (k >>> (b << 3)) & 0xff]++;
+            }
+        }
+
+        int [] srcKeys = keys, dstKeys = null;
+        long [] srcValues = values, dstValues = null;
+        for (int b = 0; b < bytes; b++)
+        {
+            final int [] count = counts[b];
+            final int shift = b << 3;
+            if (count[(int) ((keys[0] ^ Integer.MIN_VALUE) >>> shift) & 0xff] == n)
+                continue;
+
+            if (dstKeys == null)
+            {
+                dstKeys = new int [n];
+                dstValues = new long [n];
+            }
+
+            int offset = 0;
+            for (int d = 0; d < 256; d++)
+            {
+                final int c = count[d];
+                count[d] = offset;
+                offset += c;
+            }
+
+            for (int i = 0; i < n; i++)
+            {
+                final int k = srcKeys[i];
+                final int j = count[(int) ((k ^ Integer.MIN_VALUE) >>> shift) & 0xff]++;
+                dstKeys[j] = k;
+                dstValues[j] = srcValues[i];
+            }
+
+            final int [] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            final long [] tv = srcValues; srcValues = dstValues; dstValues = tv;
+        }
+
+        if (srcKeys != keys)
+        {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcValues, 0, values, 0, n);
+        }
+    }
+
+    /**
+     * Returns a specialized view of the keys of this associated container.
+     * The view additionally implements {@link ObjectLookupContainer}.
+     */
+    public KeysContainer keys()
+    {
+        return new KeysContainer();
+    }
+
+    /**
+     * A view of the keys inside this hash map.
+     */
+    public final class KeysContainer
+            extends AbstractIntCollection implements IntLookupContainer
+    {
+        private final IntLongOpenHashMap owner =
+                IntLongOpenHashMap.this;
+
+        @Override
+        public boolean contains(int e)
+        {
+            return containsKey(e);
+        }
+
+        @Override
+        public <T extends IntProcedure> T forEach(T procedure)
+        {
+            final int [] localKeys = owner.keys;
+            final boolean [] localStates = owner.allocated;
+
+            for (int i = 0; i < localStates.length; i++)
+            {
+                if (localStates[i])
+                    procedure.apply(localKeys[i]);
+            }
+
+            return procedure;
+        }
+
+        @Override
+        public <T extends IntPredicate> T forEach(T predicate)
+        {
+            final int [] localKeys = owner.keys;
+            final boolean [] localStates = owner.allocated;
+
+            for (int i = 0; i < localStates.length; i++)
+            {
+                if (localStates[i])
+                {
+                    if (!predicate.apply(localKeys[i]))
+                        break;
+                }
+            }
+
+            return predicate;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return owner.isEmpty();
+        }
+
+        @Override
+        public Iterator<IntCursor> iterator()
+        {
+            return new KeysIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return owner.size();
+        }
+
+        @Override
+        public void clear()
+        {
+            owner.clear();
+        }
+
+        @Override
+        public int removeAll(IntPredicate predicate)
+        {
+            return owner.removeAll(predicate);
+        }
+
+        @Override
+        public int removeAllOccurrences(final int e)
+        {
+            final boolean hasKey = owner.containsKey(e);
+            int result = 0;
+            if (hasKey)
+            {
+                owner.remove(e);
+                result = 1;
+            }
+            return result;
+        }
+    };
+
+    /**
+     * An iterator over the set of assigned keys.
+     */
+    private final class KeysIterator extends AbstractIterator<IntCursor>
+    {
+        private final IntCursor cursor;
+
+        public KeysIterator()
+        {
+            cursor = new IntCursor();
+            cursor.index = -1;
+        }
+
+        @Override
+        protected IntCursor fetch()
+        {
+            int i = cursor.index + 1;
+            final int max = keys.length;
+            while (i < max && !allocated[i])
+            {
+                i++;
+            }
+
+            if (i == max)
+                return done();
+
+            cursor.index = i;
+            cursor.value = keys[i];
+
+            return cursor;
+        }
+    }
+
+    /**
+     * @return Returns a container with all values stored in this map.
+     */
+    @Override
+    public LongContainer values()
+    {
+        return new ValuesContainer();
+    }
+
+    /**
+     * A view over the set of values of this map.
+     */
+    private final class ValuesContainer extends AbstractLongCollection
+    {
+        @Override
+        public int size()
+        {
+            return IntLongOpenHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return IntLongOpenHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(long value)
+        {
+            return containsValue(value);
+        }
+
+        @Override
+        public <T extends LongProcedure> T forEach(T procedure)
+        {
+            final boolean [] allocated = IntLongOpenHashMap.this.allocated;
+            final long [] values = IntLongOpenHashMap.this.values;
+
+            for (int i = 0; i < allocated.length; i++)
+            {
+                if (allocated[i])
+                    procedure.apply(values[i]);
+            }
+
+            return procedure;
+        }
+
+        @Override
+        public <T extends LongPredicate> T forEach(T predicate)
+        {
+            final boolean [] allocated = IntLongOpenHashMap.this.allocated;
+            final long [] values = IntLongOpenHashMap.this.values;
+
+            for (int i = 0; i < allocated.length; i++)
+            {
+                if (allocated[i])
+                {
+                    if (!predicate.apply(values[i]))
+                        break;
+                }
+            }
+
+            return predicate;
+        }
+
+        @Override
+        public Iterator<LongCursor> iterator()
+        {
+            return new ValuesIterator();
+        }
+
+        @Override
+        public int removeAllOccurrences(long e)
+        {
+            return removeValue(e);
+        }
+
+        @Override
+        public int removeAll(LongPredicate predicate)
+        {
+            return removeAllValues(predicate);
+        }
+
+        @Override
+        public void clear()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An iterator over the set of assigned values.
+     */
+    private final class ValuesIterator extends AbstractIterator<LongCursor>
+    {
+        private final LongCursor cursor;
+
+        public ValuesIterator()
+        {
+            cursor = new LongCursor();
+            cursor.index = -1;
+        }
+
+        @Override
+        protected LongCursor fetch()
+        {
+            int i = cursor.index + 1;
+            final int max = keys.length;
+            while (i < max && !allocated[i])
+            {
+                i++;
+            }
+
+            if (i == max)
+                return done();
+
+            cursor.index = i;
+            cursor.value = values[i];
+
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IntLongOpenHashMap clone()
+    {
+        try
+        {
+            /*  */
+            IntLongOpenHashMap cloned =
+                    (IntLongOpenHashMap) super.clone();
+
+            cloned.keys = keys.clone();
+            cloned.values = values.clone();
+            cloned.allocated = allocated.clone();
+            if (changeLog != null)
+                cloned.changeLog = changeLog.clone();
+            if (inverse != null)
+                cloned.inverse = inverse.clone();
+
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        boolean first = true;
+        for (IntLongCursor cursor : this)
+        {
+            if (!first) buffer.append(", ");
+            buffer.append(cursor.key);
+            buffer.append("=>");
+            buffer.append(cursor.value);
+            first = false;
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs.
+     */
+    public static  IntLongOpenHashMap from(int [] keys, long [] values)
+    {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+
+        IntLongOpenHashMap map = new IntLongOpenHashMap();
+        for (int i = 0; i < keys.length; i++)
+        {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Create a hash map from another associative container.
+     */
+    public static  IntLongOpenHashMap from(IntLongAssociativeContainer container)
+    {
+        return new IntLongOpenHashMap(container);
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static  IntLongOpenHashMap newInstance()
+    {
+        return new IntLongOpenHashMap();
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static  IntLongOpenHashMap newInstance(int initialCapacity, float loadFactor)
+    {
+        return new IntLongOpenHashMap(initialCapacity, loadFactor);
+    }
+}
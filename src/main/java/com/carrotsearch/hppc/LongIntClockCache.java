@@ -0,0 +1,494 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A bounded cache of <code>long</code> keys to <code>int</code> values with
+ * <i>CLOCK</i> (second chance) eviction.
+ *
+ * <p>
+ * Entries are stored in dense, index-aligned arrays ({@link #entryKeys},
+ * {@link #entryValues}) and located through an open addressing hash table with
+ * linear probing, just like {@link LongIntOpenHashMap}. Every lookup hit sets the
+ * entry's bit in {@link #referenced}. When the cache is full, a clock hand sweeps
+ * over the entries clearing reference bits and evicts the first entry that was not
+ * referenced since the last sweep. No per-entry objects are created and buffers are
+ * allocated once, so the memory footprint is fixed by the capacity.
+ * </p>
+ *
+ * <p>
+ * Evicted entries are passed to an optional {@link LongIntProcedure}; hits, misses
+ * and evictions are counted (see {@link #hits()}, {@link #misses()},
+ * {@link #evictions()}).
+ * </p>
+ */
+public class LongIntClockCache implements Cloneable, Serializable
+{
+    /**
+     * Load factor of the hash table (relative to the capacity of the cache).
+     */
+    private final static float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Hash-indexed array holding all keys.
+     */
+    public long [] keys;
+
+    /**
+     * Hash-indexed array with the entry index of each key in {@link #keys}.
+     */
+    public int [] entryIndex;
+
+    /**
+     * Information if an entry (slot) in the {@link #keys} table is allocated
+     * or empty.
+     */
+    public boolean [] allocated;
+
+    /**
+     * Dense array of cached keys, <code>0..size()-1</code>.
+     */
+    public long [] entryKeys;
+
+    /**
+     * Dense array of cached values, aligned with {@link #entryKeys}.
+     */
+    public int [] entryValues;
+
+    /**
+     * CLOCK reference bits, aligned with {@link #entryKeys}.
+     */
+    public boolean [] referenced;
+
+    /**
+     * Hash table slot of each entry, aligned with {@link #entryKeys}.
+     */
+    private int [] tableSlot;
+
+    /**
+     * Number of cached entries.
+     */
+    public int assigned;
+
+    /**
+     * The clock hand (next eviction candidate).
+     */
+    private int hand;
+
+    /**
+     * Entry index of the most recent {@link #containsKey} hit (required for {@link #lget}).
+     */
+    private int lastEntry = -1;
+
+    /**
+     * Called with every evicted entry (may be <code>null</code>, not serialized).
+     */
+    private final transient LongIntProcedure evictionListener;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache holding at most <code>capacity</code> entries.
+     */
+    public LongIntClockCache(int capacity)
+    {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a cache holding at most <code>capacity</code> entries.
+     *
+     * @param capacity The maximum number of entries (greater than zero).
+     * @param evictionListener Called with the key and value of each evicted entry
+     *            (may be <code>null</code>). The listener must not modify this cache.
+     */
+    public LongIntClockCache(int capacity, LongIntProcedure evictionListener)
+    {
+        assert capacity > 0 && capacity <= (0x80000000 >>> 2)
+                : "Capacity must be between (0, " + (0x80000000 >>> 2) + "].";
+
+        final int tableSize = BitUtil.nextHighestPowerOfTwo(
+                Math.max(LongIntOpenHashMap.MIN_CAPACITY, (int) Math.ceil(capacity / LOAD_FACTOR)));
+
+        this.keys = new long [tableSize];
+        this.entryIndex = new int [tableSize];
+        this.allocated = new boolean [tableSize];
+
+        this.entryKeys = new long [capacity];
+        this.entryValues = new int [capacity];
+        this.referenced = new boolean [capacity];
+        this.tableSlot = new int [capacity];
+
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Put a key-value pair into the cache, evicting an entry if the cache is full.
+     *
+     * @return Returns the previous value stored under <code>key</code> or <code>0</code>.
+     */
+    public int put(long key, int value)
+    {
+        final int mask = allocated.length - 1;
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                final int e = entryIndex[slot];
+                final int oldValue = entryValues[e];
+                entryValues[e] = value;
+                referenced[e] = true;
+                return oldValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (assigned < entryKeys.length)
+        {
+            insert(slot, assigned++, key, value);
+            return ((int) 0);
+        }
+
+        // Replace the victim in place, so that its neighbours keep their positions
+        // on the clock and the new entry is the last one the hand reaches.
+        final int e = evict();
+        final long evictedKey = entryKeys[e];
+        final int evictedValue = entryValues[e];
+
+        // Removal may have shifted the free slot for the new key.
+        slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, e, key, value);
+        hand = (e + 1 == assigned) ? 0 : e + 1;
+
+        if (evictionListener != null)
+            evictionListener.apply(evictedKey, evictedValue);
+        return ((int) 0);
+    }
+
+    /**
+     * Store a new entry at entry index <code>e</code> and (free) table <code>slot</code>.
+     */
+    private void insert(int slot, int e, long key, int value)
+    {
+        allocated[slot] = true;
+        keys[slot] = key;
+        entryIndex[slot] = e;
+
+        entryKeys[e] = key;
+        entryValues[e] = value;
+        referenced[e] = false;
+        tableSlot[e] = slot;
+        lastEntry = -1;
+    }
+
+    /**
+     * Returns the value cached for <code>key</code> or <code>0</code>. Counts as
+     * a hit or a miss. Use {@link #containsKey} and {@link #lget} to distinguish
+     * a missing key from a cached zero.
+     */
+    public int get(long key)
+    {
+        final int slot = slotOf(key);
+        if (slot >= 0)
+        {
+            hits++;
+            final int e = entryIndex[slot];
+            referenced[e] = true;
+            return entryValues[e];
+        }
+        misses++;
+        return ((int) 0);
+    }
+
+    /**
+     * Checks if <code>key</code> is cached, counting a hit or a miss. Saves the
+     * entry for fast access using {@link #lget}.
+     */
+    public boolean containsKey(long key)
+    {
+        final int slot = slotOf(key);
+        if (slot >= 0)
+        {
+            hits++;
+            lastEntry = entryIndex[slot];
+            referenced[lastEntry] = true;
+            return true;
+        }
+        misses++;
+        lastEntry = -1;
+        return false;
+    }
+
+    /**
+     * Returns the last value saved in a call to {@link #containsKey}.
+     *
+     * @see #containsKey
+     */
+    public int lget()
+    {
+        assert lastEntry >= 0 : "Call containsKey() first.";
+
+        return entryValues[lastEntry];
+    }
+
+    /**
+     * Checks if <code>key</code> is cached without affecting statistics or
+     * reference bits.
+     */
+    public boolean peek(long key)
+    {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Remove <code>key</code> from the cache. The eviction listener is not called.
+     *
+     * @return Returns the value stored under <code>key</code> or <code>0</code>.
+     */
+    public int remove(long key)
+    {
+        final int slot = slotOf(key);
+        if (slot >= 0)
+        {
+            final int v = entryValues[entryIndex[slot]];
+            removeEntry(slot);
+            return v;
+        }
+        return ((int) 0);
+    }
+
+    /**
+     * Advance the clock hand to the first unreferenced entry and remove its key from
+     * the hash table. The entry itself stays in place to be overwritten by the caller.
+     *
+     * @return Returns the entry index of the victim.
+     */
+    private int evict()
+    {
+        final boolean [] referenced = this.referenced;
+        while (referenced[hand])
+        {
+            referenced[hand] = false;
+            if (++hand == assigned)
+                hand = 0;
+        }
+
+        shiftConflictingKeys(tableSlot[hand]);
+        evictions++;
+        return hand;
+    }
+
+    /**
+     * Remove the entry whose key is at table <code>slot</code>, moving the last
+     * entry into the hole.
+     */
+    private void removeEntry(int slot)
+    {
+        final int e = entryIndex[slot];
+        shiftConflictingKeys(slot);
+
+        final int last = --assigned;
+        if (e != last)
+        {
+            entryKeys[e] = entryKeys[last];
+            entryValues[e] = entryValues[last];
+            referenced[e] = referenced[last];
+            tableSlot[e] = tableSlot[last];
+            entryIndex[tableSlot[e]] = e;
+        }
+
+        if (hand >= assigned)
+            hand = 0;
+        lastEntry = -1;
+    }
+
+    private int slotOf(long key)
+    {
+        final int mask = allocated.length - 1;
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Shift all the slot-conflicting keys allocated to (and including) <code>slot</code>,
+     * updating the entries' back references.
+     */
+    private void shiftConflictingKeys(int slotCurr)
+    {
+        final int mask = allocated.length - 1;
+        int slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (allocated[slotCurr])
+            {
+                slotOther = rehash(keys[slotCurr]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    // we're on the right of the original slot.
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    // we've wrapped around.
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (!allocated[slotCurr])
+                break;
+
+            // Shift key and fix the entry's table reference.
+            keys[slotPrev] = keys[slotCurr];
+            entryIndex[slotPrev] = entryIndex[slotCurr];
+            tableSlot[entryIndex[slotPrev]] = slotPrev;
+        }
+
+        allocated[slotPrev] = false;
+    }
+
+    /**
+     * Applies <code>procedure</code> to all cached entries, in no particular order.
+     */
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        for (int e = 0; e < assigned; e++)
+        {
+            procedure.apply(entryKeys[e], entryValues[e]);
+        }
+        return procedure;
+    }
+
+    /**
+     * @return Returns the number of cached entries.
+     */
+    public int size()
+    {
+        return assigned;
+    }
+
+    /**
+     * @return Returns the maximum number of cached entries.
+     */
+    public int capacity()
+    {
+        return entryKeys.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return Returns the number of lookups that found a cached entry.
+     */
+    public long hits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return Returns the number of lookups that did not find a cached entry.
+     */
+    public long misses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return Returns the number of entries evicted to make room for new ones.
+     */
+    public long evictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Reset hit, miss and eviction counters.
+     */
+    public void resetStats()
+    {
+        hits = misses = evictions = 0;
+    }
+
+    /**
+     * Remove all entries (without calling the eviction listener). Does not
+     * release internal buffers or reset statistics.
+     */
+    public void clear()
+    {
+        assigned = 0;
+        hand = 0;
+        lastEntry = -1;
+        Arrays.fill(allocated, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntClockCache clone()
+    {
+        try
+        {
+            LongIntClockCache cloned = (LongIntClockCache) super.clone();
+            cloned.keys = keys.clone();
+            cloned.entryIndex = entryIndex.clone();
+            cloned.allocated = allocated.clone();
+            cloned.entryKeys = entryKeys.clone();
+            cloned.entryValues = entryValues.clone();
+            cloned.referenced = referenced.clone();
+            cloned.tableSlot = tableSlot.clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this cache to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+        for (int e = 0; e < assigned; e++)
+        {
+            if (e > 0) buffer.append(", ");
+            buffer.append(entryKeys[e]);
+            buffer.append("=>");
+            buffer.append(entryValues[e]);
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,963 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.cursors.*;
+import com.carrotsearch.hppc.predicates.*;
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A hash map of <code>long</code> to <code>int</code> with a compact layout: keys
+ * and values are stored densely in {@link #keys} and {@link #values} (entries
+ * <code>0..size()-1</code>) and a separate open addressing table (linear probing) of
+ * <code>int</code> entry pointers is used for lookups.
+ *
+ * <p>
+ * Unlike in {@link LongIntOpenHashMap}, iteration, {@link #forEach}, {@link #hashCode}
+ * and {@link #toString} run over contiguous live entries only, so they cost
+ * O(size) rather than O(capacity), even after a map grew large and then shrank.
+ * Entries are iterated in insertion order, except that {@link #remove} moves the last
+ * entry into the position of the removed one (bulk removals with
+ * {@link #removeAll(LongPredicate)} preserve the order of the remaining entries). The
+ * iteration order is therefore deterministic: it depends only on the sequence of
+ * operations, not on hashes or capacity. Since the pointer table holds 4 bytes per
+ * slot and the entry arrays are only as long as the load factor allows, the map also
+ * takes less memory than {@link LongIntOpenHashMap} at the same capacity.
+ * </p>
+ *
+ * <p>
+ * Lookups follow one extra indirection (from the pointer table to the key), so
+ * prefer {@link LongIntOpenHashMap} when lookups dominate and maps do not shrink.
+ * </p>
+ *
+ * @see LongIntOpenHashMap
+ */
+public class LongIntCompactHashMap
+        implements LongIntMap, Cloneable, Serializable
+{
+    /**
+     * Default capacity.
+     */
+    public final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Minimum capacity for the map.
+     */
+    public final static int MIN_CAPACITY = 4;
+
+    /**
+     * Default load factor.
+     */
+    public final static float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Keys of all entries, in iteration order. Only the first {@link #assigned}
+     * entries are valid.
+     */
+    public long [] keys;
+
+    /**
+     * Values of all entries, aligned with {@link #keys}.
+     */
+    public int [] values;
+
+    /**
+     * Cached number of entries (the valid prefix of {@link #keys} and {@link #values}).
+     */
+    public int assigned;
+
+    /**
+     * The load factor for this map (fraction of occupied slots of the pointer table
+     * before it must be reallocated).
+     */
+    public final float loadFactor;
+
+    /**
+     * The pointer table: the position of an entry in {@link #keys} plus one, or zero
+     * for an empty slot.
+     */
+    private int [] slots;
+
+    /**
+     * The most recent entry accessed in {@link #containsKey} (required for
+     * {@link #lget}).
+     *
+     * @see #containsKey
+     * @see #lget
+     */
+    private int lastEntry;
+
+    /**
+     * Creates a hash map with the default capacity of {@value #DEFAULT_CAPACITY},
+     * load factor of {@value #DEFAULT_LOAD_FACTOR}.
+     */
+    public LongIntCompactHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@value #DEFAULT_LOAD_FACTOR}.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     */
+    public LongIntCompactHashMap(int initialCapacity)
+    {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public LongIntCompactHashMap(int initialCapacity, float loadFactor)
+    {
+        initialCapacity = Math.max(initialCapacity, MIN_CAPACITY);
+
+        assert initialCapacity > 0
+                : "Initial capacity must be between (0, " + Integer.MAX_VALUE + "].";
+        assert loadFactor > 0 && loadFactor < 1
+                : "Load factor must be between (0, 1).";
+
+        this.loadFactor = loadFactor;
+        this.keys = new long [0];
+        this.values = new int [0];
+        allocateBuffers(roundCapacity(initialCapacity));
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public LongIntCompactHashMap(LongIntAssociativeContainer container)
+    {
+        this((int) (container.size() * (1 + DEFAULT_LOAD_FACTOR)));
+        putAll(container);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int put(long key, int value)
+    {
+        final int slot = slotOf(key);
+        if (slot >= 0)
+        {
+            final int entry = slots[slot] - 1;
+            final int oldValue = values[entry];
+            values[entry] = value;
+            return oldValue;
+        }
+
+        append(~slot, key, value);
+        return ((int) 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int putAll(
+            LongIntAssociativeContainer container)
+    {
+        final int count = this.assigned;
+        for (LongIntCursor c : container)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * Puts all key/value pairs from a given iterable into this map.
+     */
+    @Override
+    public final int putAll(
+            Iterable<? extends LongIntCursor> iterable)
+    {
+        final int count = this.assigned;
+        for (LongIntCursor c : iterable)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putIfAbsent(long, int)}.
+     */
+    public final boolean putIfAbsent(long key, int value)
+    {
+        final int slot = slotOf(key);
+        if (slot < 0)
+        {
+            append(~slot, key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putOrAdd(long, int, int)}.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public final int putOrAdd(long key, int putValue, int additionValue)
+    {
+        final int slot = slotOf(key);
+        if (slot >= 0)
+        {
+            return values[slots[slot] - 1] += additionValue;
+        }
+
+        append(~slot, key, putValue);
+        return putValue;
+    }
+
+    /**
+     * Append a new entry and point the (empty) <code>slot</code> at it.
+     */
+    private void append(int slot, long key, int value)
+    {
+        if (assigned == keys.length)
+        {
+            expandAndRehash();
+            slot = ~slotOf(key);
+        }
+
+        final int entry = assigned++;
+        keys[entry] = key;
+        values[entry] = value;
+        slots[slot] = entry + 1;
+    }
+
+    /**
+     * Expand the pointer table and the entry arrays. Entries keep their positions;
+     * only the pointer table is rebuilt.
+     */
+    private void expandAndRehash()
+    {
+        assert assigned == keys.length;
+        allocateBuffers(slots.length << 1);
+        lastEntry = -1;
+    }
+
+    /**
+     * Allocate the pointer table for a given capacity, resize the entry arrays to
+     * match and point the table at all current entries.
+     *
+     * @param capacity New capacity (must be a power of two).
+     */
+    private void allocateBuffers(int capacity)
+    {
+        this.slots = new int [capacity];
+
+        final int maxEntries = Math.min(capacity - 1, (int) (capacity * loadFactor));
+        this.keys = Arrays.copyOf(keys, maxEntries);
+        this.values = Arrays.copyOf(values, maxEntries);
+
+        rebuildSlots();
+    }
+
+    /**
+     * Point an empty pointer table at all entries.
+     */
+    private void rebuildSlots()
+    {
+        final int [] slots = this.slots;
+        final long [] keys = this.keys;
+        final int mask = slots.length - 1;
+        for (int entry = 0; entry < assigned; entry++)
+        {
+            int slot = rehash(keys[entry]) & mask;
+            while (slots[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    /**
+     * @return Returns the slot pointing at <code>key</code> or, if the key is not in
+     * the map, <code>~slot</code> where <code>slot</code> is the empty slot ending its
+     * probe sequence.
+     */
+    private int slotOf(long key)
+    {
+        final int [] slots = this.slots;
+        final long [] keys = this.keys;
+        final int mask = slots.length - 1;
+
+        int slot = rehash(key) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0)
+        {
+            if (((key) == (keys[entry - 1])))
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The last entry is moved into the position of the removed one.</p>
+     */
+    @Override
+    public int remove(long key)
+    {
+        final int slot = slotOf(key);
+        if (slot < 0)
+            return ((int) 0);
+
+        final int entry = slots[slot] - 1;
+        final int v = values[entry];
+        shiftConflictingKeys(slot);
+
+        final int last = --assigned;
+        if (entry != last)
+        {
+            // Re-point the slot of the last entry at its new position.
+            final int mask = slots.length - 1;
+            int s = rehash(keys[last]) & mask;
+            while (slots[s] != last + 1)
+            {
+                s = (s + 1) & mask;
+            }
+            slots[s] = entry + 1;
+
+            keys[entry] = keys[last];
+            values[entry] = values[last];
+        }
+
+        lastEntry = -1;
+        return v;
+    }
+
+    /**
+     * Shift all the slot-conflicting pointers allocated to (and including) <code>slot</code>.
+     */
+    protected final void shiftConflictingKeys(int slotCurr)
+    {
+        // Copied nearly verbatim from fastutil's impl.
+        final int [] slots = this.slots;
+        final int mask = slots.length - 1;
+        int slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (slots[slotCurr] != 0)
+            {
+                slotOther = rehash(keys[slots[slotCurr] - 1]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    // we're on the right of the original slot.
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    // we've wrapped around.
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (slots[slotCurr] == 0)
+                break;
+
+            // Shift the pointer.
+            slots[slotPrev] = slots[slotCurr];
+        }
+
+        slots[slotPrev] = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongContainer container)
+    {
+        final int before = this.assigned;
+
+        for (LongCursor cursor : container)
+        {
+            remove(cursor.value);
+        }
+
+        return before - this.assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Remaining entries are compacted in place, preserving their order, and the
+     * pointer table is rebuilt once. The predicate is applied to all entries before
+     * the map is modified, so it may read this map.</p>
+     */
+    @Override
+    public final int removeAll(LongPredicate predicate)
+    {
+        final int before = this.assigned;
+
+        final long [] keys = this.keys;
+        final int [] values = this.values;
+
+        final BitSet victims = new BitSet(before);
+        int first = -1;
+        for (int i = 0; i < before; i++)
+        {
+            if (predicate.apply(keys[i]))
+            {
+                victims.set(i);
+                if (first < 0) first = i;
+            }
+        }
+
+        if (first >= 0)
+        {
+            int to = first;
+            for (int from = first + 1; from < before; from++)
+            {
+                if (!victims.get(from))
+                {
+                    keys[to] = keys[from];
+                    values[to] = values[from];
+                    to++;
+                }
+            }
+
+            assigned = to;
+            Arrays.fill(slots, 0);
+            rebuildSlots();
+            lastEntry = -1;
+        }
+
+        return before - this.assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int get(long key)
+    {
+        final int slot = slotOf(key);
+        return slot >= 0 ? values[slots[slot] - 1] : ((int) 0);
+    }
+
+    /**
+     * Returns the last value saved in a call to {@link #containsKey}.
+     *
+     * @see #containsKey
+     */
+    public int lget()
+    {
+        assert lastEntry >= 0 : "Call containsKey() first.";
+        assert lastEntry < assigned : "Last call to exists did not have any associated value.";
+
+        return values[lastEntry];
+    }
+
+    /**
+     * Sets the value corresponding to the key saved in the last
+     * call to {@link #containsKey}, if and only if the key exists
+     * in the map already.
+     *
+     * @see #containsKey
+     * @return Returns the previous value stored under the given key.
+     */
+    public int lset(int value)
+    {
+        assert lastEntry >= 0 : "Call containsKey() first.";
+        assert lastEntry < assigned : "Last call to exists did not have any associated value.";
+
+        final int previous = values[lastEntry];
+        values[lastEntry] = value;
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Saves the associated value for fast access using {@link #lget}
+     * or {@link #lset}.</p>
+     */
+    @Override
+    public boolean containsKey(long key)
+    {
+        final int slot = slotOf(key);
+        lastEntry = slot >= 0 ? slots[slot] - 1 : -1;
+        return slot >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Does not release internal buffers.</p>
+     */
+    @Override
+    public void clear()
+    {
+        assigned = 0;
+        lastEntry = -1;
+        Arrays.fill(slots, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        final long [] keys = this.keys;
+        final int [] values = this.values;
+
+        int h = 0;
+        for (int i = 0; i < assigned; i++)
+        {
+            h += rehash(keys[i]) + rehash(values[i]);
+        }
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj != null)
+        {
+            if (obj == this) return true;
+
+            if (obj instanceof LongIntMap)
+            {
+                LongIntMap other = (LongIntMap) obj;
+                if (other.size() == this.size())
+                {
+                    for (int i = 0; i < assigned; i++)
+                    {
+                        if (other.containsKey(keys[i]))
+                        {
+                            int v = other.get(keys[i]);
+                            if (((values[i]) == (v)))
+                            {
+                                continue;
+                            }
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}.
+     */
+    private final class EntryIterator extends AbstractIterator<LongIntCursor>
+    {
+        private final LongIntCursor cursor;
+
+        public EntryIterator()
+        {
+            cursor = new LongIntCursor();
+            cursor.index = -1;
+        }
+
+        @Override
+        protected LongIntCursor fetch()
+        {
+            final int i = cursor.index + 1;
+            if (i >= assigned)
+                return done();
+
+            cursor.index = i;
+            cursor.key = keys[i];
+            cursor.value = values[i];
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<LongIntCursor> iterator()
+    {
+        return new EntryIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        final long [] keys = this.keys;
+        final int [] values = this.values;
+
+        for (int i = 0; i < assigned; i++)
+        {
+            procedure.apply(keys[i], values[i]);
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Returns a specialized view of the keys of this associated container.
+     * The view additionally implements {@link LongLookupContainer}.
+     */
+    public KeysContainer keys()
+    {
+        return new KeysContainer();
+    }
+
+    /**
+     * A view of the keys inside this hash map.
+     */
+    public final class KeysContainer
+            extends AbstractLongCollection implements LongLookupContainer
+    {
+        private final LongIntCompactHashMap owner =
+                LongIntCompactHashMap.this;
+
+        @Override
+        public boolean contains(long e)
+        {
+            return containsKey(e);
+        }
+
+        @Override
+        public <T extends LongProcedure> T forEach(T procedure)
+        {
+            final long [] keys = owner.keys;
+            for (int i = 0; i < owner.assigned; i++)
+            {
+                procedure.apply(keys[i]);
+            }
+            return procedure;
+        }
+
+        @Override
+        public <T extends LongPredicate> T forEach(T predicate)
+        {
+            final long [] keys = owner.keys;
+            for (int i = 0; i < owner.assigned; i++)
+            {
+                if (!predicate.apply(keys[i]))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return owner.isEmpty();
+        }
+
+        @Override
+        public Iterator<LongCursor> iterator()
+        {
+            return new KeysIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return owner.size();
+        }
+
+        @Override
+        public void clear()
+        {
+            owner.clear();
+        }
+
+        @Override
+        public int removeAll(LongPredicate predicate)
+        {
+            return owner.removeAll(predicate);
+        }
+
+        @Override
+        public int removeAllOccurrences(final long e)
+        {
+            final boolean hasKey = owner.containsKey(e);
+            int result = 0;
+            if (hasKey)
+            {
+                owner.remove(e);
+                result = 1;
+            }
+            return result;
+        }
+    };
+
+    /**
+     * An iterator over the set of assigned keys.
+     */
+    private final class KeysIterator extends AbstractIterator<LongCursor>
+    {
+        private final LongCursor cursor;
+
+        public KeysIterator()
+        {
+            cursor = new LongCursor();
+            cursor.index = -1;
+        }
+
+        @Override
+        protected LongCursor fetch()
+        {
+            final int i = cursor.index + 1;
+            if (i >= assigned)
+                return done();
+
+            cursor.index = i;
+            cursor.value = keys[i];
+            return cursor;
+        }
+    }
+
+    /**
+     * @return Returns a container with all values stored in this map.
+     */
+    @Override
+    public IntContainer values()
+    {
+        return new ValuesContainer();
+    }
+
+    /**
+     * A view over the set of values of this map.
+     */
+    private final class ValuesContainer extends AbstractIntCollection
+    {
+        @Override
+        public int size()
+        {
+            return LongIntCompactHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return LongIntCompactHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(int value)
+        {
+            // This is a linear scan over the values, but it's in the contract, so be it.
+            final int [] values = LongIntCompactHashMap.this.values;
+            for (int i = 0; i < assigned; i++)
+            {
+                if (((value) == (values[i])))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public <T extends IntProcedure> T forEach(T procedure)
+        {
+            final int [] values = LongIntCompactHashMap.this.values;
+            for (int i = 0; i < assigned; i++)
+            {
+                procedure.apply(values[i]);
+            }
+            return procedure;
+        }
+
+        @Override
+        public <T extends IntPredicate> T forEach(T predicate)
+        {
+            final int [] values = LongIntCompactHashMap.this.values;
+            for (int i = 0; i < assigned; i++)
+            {
+                if (!predicate.apply(values[i]))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public Iterator<IntCursor> iterator()
+        {
+            return new ValuesIterator();
+        }
+
+        @Override
+        public int removeAllOccurrences(int e)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int removeAll(IntPredicate predicate)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An iterator over the set of assigned values.
+     */
+    private final class ValuesIterator extends AbstractIterator<IntCursor>
+    {
+        private final IntCursor cursor;
+
+        public ValuesIterator()
+        {
+            cursor = new IntCursor();
+            cursor.index = -1;
+        }
+
+        @Override
+        protected IntCursor fetch()
+        {
+            final int i = cursor.index + 1;
+            if (i >= assigned)
+                return done();
+
+            cursor.index = i;
+            cursor.value = values[i];
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntCompactHashMap clone()
+    {
+        try
+        {
+            LongIntCompactHashMap cloned =
+                    (LongIntCompactHashMap) super.clone();
+
+            cloned.keys = keys.clone();
+            cloned.values = values.clone();
+            cloned.slots = slots.clone();
+            cloned.lastEntry = -1;
+
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        for (int i = 0; i < assigned; i++)
+        {
+            if (i > 0) buffer.append(", ");
+            buffer.append(keys[i]);
+            buffer.append("=>");
+            buffer.append(values[i]);
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Round the capacity to the next allowed value.
+     */
+    protected int roundCapacity(int requestedCapacity)
+    {
+        // Maximum positive integer that is a power of two.
+        if (requestedCapacity > (0x80000000 >>> 1))
+            return (0x80000000 >>> 1);
+
+        return Math.max(MIN_CAPACITY, BitUtil.nextHighestPowerOfTwo(requestedCapacity));
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs.
+     */
+    public static LongIntCompactHashMap from(long [] keys, int [] values)
+    {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+
+        LongIntCompactHashMap map = new LongIntCompactHashMap();
+        for (int i = 0; i < keys.length; i++)
+        {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Create a hash map from another associative container.
+     */
+    public static LongIntCompactHashMap from(LongIntAssociativeContainer container)
+    {
+        return new LongIntCompactHashMap(container);
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static LongIntCompactHashMap newInstance()
+    {
+        return new LongIntCompactHashMap();
+    }
+}
@@ -0,0 +1,1271 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.cursors.*;
+import com.carrotsearch.hppc.hash.MurmurHash3;
+import com.carrotsearch.hppc.predicates.*;
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A hash map of <code>long</code> to <code>int</code>, implemented using bucketized
+ * cuckoo hashing with a bounded lookup cost.
+ *
+ * <p>
+ * Each key has two candidate buckets, derived from the low and high halves of its
+ * 64-bit {@link MurmurHash3} hash, and is always stored in one of them (or, rarely, in
+ * a tiny {@link #STASH_SIZE}-entry stash). A bucket holds {@link #BUCKET_SLOTS} keys and
+ * their values interleaved in a single 64-byte record of {@link #table}, so a lookup
+ * reads at most two bucket records plus the stash when it is not empty, regardless of
+ * occupancy. There is no probe sequence to cluster.
+ * </p>
+ *
+ * <p>
+ * When both buckets of a new key are full, a breadth-first search over the alternate
+ * buckets of the resident keys finds the shortest chain of moves (at most
+ * {@link #MAX_SEARCH_BUCKETS} buckets are visited) that frees a slot. Only if no such
+ * chain exists is the key put into the stash; a full stash doubles the table. Inserts
+ * are therefore more expensive than in {@link LongIntOpenHashMap}; prefer this map when
+ * the worst-case cost of {@link #get} matters more than the average cost of
+ * {@link #put}.
+ * </p>
+ *
+ * <p>
+ * Empty slots are marked with the key <code>0</code>, so the <code>0</code> key itself
+ * is kept outside the table.
+ * </p>
+ *
+ * @see LongIntOpenHashMap
+ */
+public class LongIntCuckooHashMap
+        implements LongIntMap, Cloneable, Serializable
+{
+    /**
+     * Default capacity.
+     */
+    public final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Default load factor. Buckets of {@link #BUCKET_SLOTS} slots can be filled
+     * to well over 90% before inserts start failing.
+     */
+    public final static float DEFAULT_LOAD_FACTOR = 0.9f;
+
+    /**
+     * The number of key-value pairs in a single bucket.
+     */
+    public final static int BUCKET_SLOTS = 5;
+
+    /**
+     * The number of <code>long</code>s of a bucket record in {@link #table}: keys
+     * are at offsets <code>0..BUCKET_SLOTS-1</code>, followed by values packed in
+     * pairs (the low half holding the value of the even slot).
+     */
+    private final static int BUCKET_STRIDE = 8;
+
+    private final static int BUCKET_SHIFT = 3;
+
+    /**
+     * Minimum number of buckets (so that the two candidate buckets can differ).
+     */
+    private final static int MIN_BUCKETS = 2;
+
+    /**
+     * Maximum number of buckets.
+     */
+    private final static int MAX_BUCKETS = (0x80000000 >>> 1) >> BUCKET_SHIFT;
+
+    /**
+     * The maximum number of keys in the stash.
+     */
+    public final static int STASH_SIZE = 8;
+
+    /**
+     * The maximum number of buckets visited by a single insert's search for a free slot.
+     */
+    public final static int MAX_SEARCH_BUCKETS = 64;
+
+    /**
+     * Bucket records (see {@link #BUCKET_STRIDE}). A zero key marks an empty slot.
+     */
+    public long [] table;
+
+    /**
+     * Keys that could not be placed in any of their buckets.
+     */
+    public long [] stashKeys;
+
+    /**
+     * Values of {@link #stashKeys}.
+     */
+    public int [] stashValues;
+
+    /**
+     * Number of keys in the stash.
+     */
+    public int stashSize;
+
+    /**
+     * <code>true</code> if the map contains the <code>0</code> key.
+     */
+    public boolean hasZeroKey;
+
+    /**
+     * The value of the <code>0</code> key.
+     */
+    public int zeroValue;
+
+    /**
+     * Cached number of keys in this map.
+     */
+    public int assigned;
+
+    /**
+     * The load factor for this map (fraction of occupied slots before the
+     * table is doubled).
+     */
+    public final float loadFactor;
+
+    /**
+     * Cached capacity threshold at which we must resize the buffers.
+     */
+    private int resizeThreshold;
+
+    /**
+     * The most recent position found in {@link #containsKey} (required for
+     * {@link #lget}), see {@link #valueAt(int)} for the encoding.
+     */
+    private int lastSlot = -1;
+
+    /**
+     * Breadth-first search state: buckets, their parent node and the slot of the parent
+     * bucket whose key moves to the bucket.
+     */
+    private transient int [] searchBuckets, searchParents, searchSlots;
+
+    /**
+     * Creates a hash map with the default capacity of {@value #DEFAULT_CAPACITY},
+     * load factor of {@value #DEFAULT_LOAD_FACTOR}.
+     */
+    public LongIntCuckooHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@value #DEFAULT_LOAD_FACTOR}.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded up to a power of two number of buckets).
+     */
+    public LongIntCuckooHashMap(int initialCapacity)
+    {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded up to a power of two number of buckets).
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public LongIntCuckooHashMap(int initialCapacity, float loadFactor)
+    {
+        assert initialCapacity > 0
+                : "Initial capacity must be between (0, " + Integer.MAX_VALUE + "].";
+        assert loadFactor > 0 && loadFactor <= 1
+                : "Load factor must be between (0, 1].";
+
+        this.loadFactor = loadFactor;
+        this.stashKeys = new long [STASH_SIZE];
+        this.stashValues = new int [STASH_SIZE];
+        allocateBuffers(roundBuckets((int) Math.ceil(initialCapacity / (double) (BUCKET_SLOTS * loadFactor))));
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public LongIntCuckooHashMap(LongIntAssociativeContainer container)
+    {
+        this(Math.max(1, container.size()));
+        putAll(container);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int put(long key, int value)
+    {
+        final int pos = find(key);
+        if (pos >= 0)
+        {
+            final int previous = valueAt(pos);
+            setValueAt(pos, value);
+            return previous;
+        }
+
+        insertNew(key, value);
+        return ((int) 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int putAll(
+            LongIntAssociativeContainer container)
+    {
+        final int count = this.assigned;
+        for (LongIntCursor c : container)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * Puts all key/value pairs from a given iterable into this map.
+     */
+    @Override
+    public final int putAll(
+            Iterable<? extends LongIntCursor> iterable)
+    {
+        final int count = this.assigned;
+        for (LongIntCursor c : iterable)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putIfAbsent(long, int)}.
+     */
+    public final boolean putIfAbsent(long key, int value)
+    {
+        if (find(key) < 0)
+        {
+            insertNew(key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putOrAdd(long, int, int)}.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public final int putOrAdd(long key, int putValue, int additionValue)
+    {
+        final int pos = find(key);
+        if (pos >= 0)
+        {
+            final int v = valueAt(pos) + additionValue;
+            setValueAt(pos, v);
+            return v;
+        }
+
+        insertNew(key, putValue);
+        return putValue;
+    }
+
+    /**
+     * Insert a key known not to be in the map, growing the table as needed.
+     */
+    private void insertNew(long key, int value)
+    {
+        lastSlot = -1;
+        if (key == 0)
+        {
+            hasZeroKey = true;
+            zeroValue = value;
+            assigned++;
+            return;
+        }
+
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        while (!place(key, value))
+            expandAndRehash();
+        assigned++;
+    }
+
+    /**
+     * Place a non-zero key in one of its buckets (moving other keys if needed) or
+     * in the stash.
+     *
+     * @return <code>false</code> if there is no room for the key.
+     */
+    private boolean place(long key, int value)
+    {
+        final long hash = MurmurHash3.hash(key);
+        final int mask = (table.length >>> BUCKET_SHIFT) - 1;
+        final int b1 = bucket1(hash, mask);
+        final int b2 = bucket2(hash, mask);
+
+        int free = freeSlot(b1);
+        if (free >= 0)
+        {
+            set(b1, free, key, value);
+            return true;
+        }
+
+        free = freeSlot(b2);
+        if (free >= 0)
+        {
+            set(b2, free, key, value);
+            return true;
+        }
+
+        if (search(b1, b2, key, value))
+            return true;
+
+        if (stashSize < STASH_SIZE)
+        {
+            stashKeys[stashSize] = key;
+            stashValues[stashSize] = value;
+            stashSize++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Breadth-first search for the shortest chain of keys that can be moved to their
+     * alternate buckets to free a slot in <code>b1</code> or <code>b2</code>; the chain
+     * is moved and <code>key</code> put in the freed slot.
+     *
+     * @return <code>false</code> if no chain was found within {@link #MAX_SEARCH_BUCKETS}.
+     */
+    private boolean search(int b1, int b2, long key, int value)
+    {
+        if (searchBuckets == null)
+        {
+            searchBuckets = new int [MAX_SEARCH_BUCKETS];
+            searchParents = new int [MAX_SEARCH_BUCKETS];
+            searchSlots = new int [MAX_SEARCH_BUCKETS];
+        }
+
+        final int [] buckets = this.searchBuckets;
+        final int [] parents = this.searchParents;
+        final int [] slots = this.searchSlots;
+        final long [] table = this.table;
+        final int mask = (table.length >>> BUCKET_SHIFT) - 1;
+
+        buckets[0] = b1;
+        parents[0] = -1;
+        buckets[1] = b2;
+        parents[1] = -1;
+        int nodes = 2;
+
+        for (int node = 0; node < nodes; node++)
+        {
+            final int bucket = buckets[node];
+            final int base = bucket << BUCKET_SHIFT;
+            for (int s = 0; s < BUCKET_SLOTS; s++)
+            {
+                // All buckets in the queue are full.
+                final long hash = MurmurHash3.hash(table[base + s]);
+                int next = bucket1(hash, mask);
+                if (next == bucket)
+                    next = bucket2(hash, mask);
+
+                if (contains(buckets, nodes, next))
+                    continue;
+
+                final int free = freeSlot(next);
+                if (free >= 0)
+                {
+                    // Move the chain, starting from the bucket with the free slot.
+                    int toBucket = next, toSlot = free;
+                    int from = node, fromSlot = s;
+                    while (from >= 0)
+                    {
+                        final int fromBucket = buckets[from];
+                        set(toBucket, toSlot, keyAt(fromBucket, fromSlot), valueAt(fromBucket, fromSlot));
+                        toBucket = fromBucket;
+                        toSlot = fromSlot;
+                        fromSlot = slots[from];
+                        from = parents[from];
+                    }
+                    set(toBucket, toSlot, key, value);
+                    return true;
+                }
+
+                if (nodes < MAX_SEARCH_BUCKETS)
+                {
+                    buckets[nodes] = next;
+                    parents[nodes] = node;
+                    slots[nodes] = s;
+                    nodes++;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(int [] buckets, int count, int bucket)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (buckets[i] == bucket)
+                return true;
+        }
+        return false;
+    }
+
+    private static int bucket1(long hash, int mask)
+    {
+        return (int) hash & mask;
+    }
+
+    private static int bucket2(long hash, int mask)
+    {
+        final int b1 = (int) hash & mask;
+        final int b2 = (int) (hash >>> 32) & mask;
+        return b2 != b1 ? b2 : b1 ^ 1;
+    }
+
+    /**
+     * @return Returns the index of an empty slot in <code>bucket</code> or <code>-1</code>.
+     */
+    private int freeSlot(int bucket)
+    {
+        final int base = bucket << BUCKET_SHIFT;
+        for (int s = 0; s < BUCKET_SLOTS; s++)
+        {
+            if (table[base + s] == 0)
+                return s;
+        }
+        return -1;
+    }
+
+    private long keyAt(int bucket, int slot)
+    {
+        return table[(bucket << BUCKET_SHIFT) + slot];
+    }
+
+    private int valueAt(int bucket, int slot)
+    {
+        return (int) (table[(bucket << BUCKET_SHIFT) + BUCKET_SLOTS + (slot >> 1)] >>> ((slot & 1) << 5));
+    }
+
+    private void set(int bucket, int slot, long key, int value)
+    {
+        final int base = bucket << BUCKET_SHIFT;
+        table[base + slot] = key;
+        setPacked(base + BUCKET_SLOTS + (slot >> 1), (slot & 1) << 5, value);
+    }
+
+    private void setPacked(int index, int shift, int value)
+    {
+        table[index] = (table[index] & ~(0xffffffffL << shift)) | ((value & 0xffffffffL) << shift);
+    }
+
+    /*
+     * Positions: a table index (bucket << BUCKET_SHIFT | slot) for keys in the table,
+     * table.length + i for the i-th stash entry, table.length + STASH_SIZE for
+     * the zero key.
+     */
+
+    /**
+     * @return Returns the position of <code>key</code> or <code>-1</code> if not found.
+     */
+    private int find(long key)
+    {
+        if (key == 0)
+            return hasZeroKey ? table.length + STASH_SIZE : -1;
+
+        final long [] table = this.table;
+        final long hash = MurmurHash3.hash(key);
+        final int mask = (table.length >>> BUCKET_SHIFT) - 1;
+
+        int base = bucket1(hash, mask) << BUCKET_SHIFT;
+        for (int s = 0; s < BUCKET_SLOTS; s++)
+        {
+            if (table[base + s] == key)
+                return base + s;
+        }
+
+        base = bucket2(hash, mask) << BUCKET_SHIFT;
+        for (int s = 0; s < BUCKET_SLOTS; s++)
+        {
+            if (table[base + s] == key)
+                return base + s;
+        }
+
+        for (int i = 0; i < stashSize; i++)
+        {
+            if (stashKeys[i] == key)
+                return table.length + i;
+        }
+        return -1;
+    }
+
+    private int valueAt(int pos)
+    {
+        if (pos < table.length)
+            return valueAt(pos >>> BUCKET_SHIFT, pos & (BUCKET_STRIDE - 1));
+        if (pos < table.length + STASH_SIZE)
+            return stashValues[pos - table.length];
+        return zeroValue;
+    }
+
+    private void setValueAt(int pos, int value)
+    {
+        if (pos < table.length)
+        {
+            final int slot = pos & (BUCKET_STRIDE - 1);
+            setPacked((pos - slot) + BUCKET_SLOTS + (slot >> 1), (slot & 1) << 5, value);
+        }
+        else if (pos < table.length + STASH_SIZE)
+            stashValues[pos - table.length] = value;
+        else
+            zeroValue = value;
+    }
+
+    private long keyAt(int pos)
+    {
+        if (pos < table.length)
+            return table[pos];
+        if (pos < table.length + STASH_SIZE)
+            return stashKeys[pos - table.length];
+        return 0L;
+    }
+
+    /**
+     * Remove the key at the given position.
+     */
+    private void removeAt(int pos)
+    {
+        assigned--;
+        lastSlot = -1;
+        if (pos < table.length)
+        {
+            table[pos] = 0;
+            if (stashSize > 0)
+                drainStash();
+        }
+        else if (pos < table.length + STASH_SIZE)
+        {
+            final int last = --stashSize;
+            stashKeys[pos - table.length] = stashKeys[last];
+            stashValues[pos - table.length] = stashValues[last];
+        }
+        else
+        {
+            hasZeroKey = false;
+        }
+    }
+
+    /**
+     * Move stashed keys to their buckets if a slot was freed there.
+     */
+    private void drainStash()
+    {
+        final int mask = (table.length >>> BUCKET_SHIFT) - 1;
+        for (int i = 0; i < stashSize;)
+        {
+            final long key = stashKeys[i];
+            final long hash = MurmurHash3.hash(key);
+
+            int bucket = bucket1(hash, mask);
+            int free = freeSlot(bucket);
+            if (free < 0)
+                free = freeSlot(bucket = bucket2(hash, mask));
+
+            if (free >= 0)
+            {
+                set(bucket, free, key, stashValues[i]);
+                final int last = --stashSize;
+                stashKeys[i] = stashKeys[last];
+                stashValues[i] = stashValues[last];
+                continue;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Double the number of buckets (more than once if the keys still do not fit)
+     * and reinsert all keys.
+     */
+    private void expandAndRehash()
+    {
+        final long [] oldTable = this.table;
+        final long [] oldStashKeys = this.stashKeys.clone();
+        final int [] oldStashValues = this.stashValues.clone();
+        final int oldStashSize = this.stashSize;
+
+        int buckets = oldTable.length >>> BUCKET_SHIFT;
+        rehash: while (true)
+        {
+            assert buckets < MAX_BUCKETS
+                    : "Maximum capacity exceeded (" + (MAX_BUCKETS * BUCKET_SLOTS) + ").";
+            buckets <<= 1;
+            allocateBuffers(buckets);
+            stashSize = 0;
+
+            for (int base = 0; base < oldTable.length; base += BUCKET_STRIDE)
+            {
+                for (int s = 0; s < BUCKET_SLOTS; s++)
+                {
+                    final long key = oldTable[base + s];
+                    if (key != 0
+                            && !place(key, (int) (oldTable[base + BUCKET_SLOTS + (s >> 1)] >>> ((s & 1) << 5))))
+                        continue rehash;
+                }
+            }
+
+            for (int i = 0; i < oldStashSize; i++)
+            {
+                if (!place(oldStashKeys[i], oldStashValues[i]))
+                    continue rehash;
+            }
+            break;
+        }
+        lastSlot = -1;
+    }
+
+    /**
+     * Allocate the table for the given number of buckets.
+     */
+    private void allocateBuffers(int buckets)
+    {
+        this.table = new long [buckets << BUCKET_SHIFT];
+        this.resizeThreshold = (int) (buckets * BUCKET_SLOTS * loadFactor);
+    }
+
+    private static int roundBuckets(int requestedBuckets)
+    {
+        if (requestedBuckets > MAX_BUCKETS)
+            return MAX_BUCKETS;
+
+        return Math.max(MIN_BUCKETS, BitUtil.nextHighestPowerOfTwo(requestedBuckets));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int remove(long key)
+    {
+        final int pos = find(key);
+        if (pos >= 0)
+        {
+            final int v = valueAt(pos);
+            removeAt(pos);
+            return v;
+        }
+        return ((int) 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongContainer container)
+    {
+        final int before = this.assigned;
+
+        for (LongCursor cursor : container)
+        {
+            remove(cursor.value);
+        }
+
+        return before - this.assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongPredicate predicate)
+    {
+        final int before = this.assigned;
+
+        if (hasZeroKey && predicate.apply(0L))
+            removeAt(table.length + STASH_SIZE);
+
+        for (int i = 0; i < stashSize;)
+        {
+            if (predicate.apply(stashKeys[i]))
+            {
+                removeAt(table.length + i);
+                // Repeat the check for the same i.
+                continue;
+            }
+            i++;
+        }
+
+        final long [] table = this.table;
+        for (int base = 0; base < table.length; base += BUCKET_STRIDE)
+        {
+            for (int s = 0; s < BUCKET_SLOTS; s++)
+            {
+                if (table[base + s] != 0 && predicate.apply(table[base + s]))
+                {
+                    table[base + s] = 0;
+                    assigned--;
+                }
+            }
+        }
+
+        // Stashed keys may fit into the freed slots now.
+        if (stashSize > 0)
+            drainStash();
+
+        lastSlot = -1;
+        return before - this.assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int get(long key)
+    {
+        final int pos = find(key);
+        return pos >= 0 ? valueAt(pos) : ((int) 0);
+    }
+
+    /**
+     * Returns the last value saved in a call to {@link #containsKey}.
+     *
+     * @see #containsKey
+     */
+    public int lget()
+    {
+        assert lastSlot >= 0 : "Call containsKey() first.";
+
+        return valueAt(lastSlot);
+    }
+
+    /**
+     * Sets the value corresponding to the key saved in the last
+     * call to {@link #containsKey}, if and only if the key exists
+     * in the map already.
+     *
+     * @see #containsKey
+     * @return Returns the previous value stored under the given key.
+     */
+    public int lset(int value)
+    {
+        assert lastSlot >= 0 : "Call containsKey() first.";
+
+        final int previous = valueAt(lastSlot);
+        setValueAt(lastSlot, value);
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Saves the associated value for fast access using {@link #lget}
+     * or {@link #lset}.</p>
+     */
+    @Override
+    public boolean containsKey(long key)
+    {
+        return (lastSlot = find(key)) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Does not release internal buffers.</p>
+     */
+    @Override
+    public void clear()
+    {
+        assigned = 0;
+        stashSize = 0;
+        hasZeroKey = false;
+        lastSlot = -1;
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return assigned;
+    }
+
+    /**
+     * @return Returns the number of slots in the table (excluding the stash).
+     */
+    public int capacity()
+    {
+        return (table.length >>> BUCKET_SHIFT) * BUCKET_SLOTS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        int h = 0;
+        for (LongIntCursor c : this)
+        {
+            h += rehash(c.key) + rehash(c.value);
+        }
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj != null)
+        {
+            if (obj == this) return true;
+
+            if (obj instanceof LongIntMap)
+            {
+                LongIntMap other = (LongIntMap) obj;
+                if (other.size() == this.size())
+                {
+                    for (LongIntCursor c : this)
+                    {
+                        if (other.containsKey(c.key))
+                        {
+                            int v = other.get(c.key);
+                            if (((c.value) == (v)))
+                            {
+                                continue;
+                            }
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An iterator over all occupied positions: the table, the stash and the
+     * zero key. The cursor's index is the position.
+     */
+    private abstract class AbstractSlotIterator<E> extends AbstractIterator<E>
+    {
+        private final long [] table = LongIntCuckooHashMap.this.table;
+
+        protected int pos = -1;
+
+        /**
+         * Advance to the next occupied position.
+         *
+         * @return <code>false</code> if there are no more positions.
+         */
+        protected final boolean advance()
+        {
+            int i = pos + 1;
+            while (i < table.length)
+            {
+                if ((i & (BUCKET_STRIDE - 1)) >= BUCKET_SLOTS)
+                    i = (i | (BUCKET_STRIDE - 1)) + 1;
+                else if (table[i] != 0)
+                    return found(i);
+                else
+                    i++;
+            }
+
+            if (i < table.length + stashSize)
+                return found(i);
+
+            if (i <= table.length + STASH_SIZE && hasZeroKey)
+                return found(table.length + STASH_SIZE);
+
+            pos = table.length + STASH_SIZE;
+            return false;
+        }
+
+        private boolean found(int i)
+        {
+            pos = i;
+            return true;
+        }
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}.
+     */
+    private final class EntryIterator extends AbstractSlotIterator<LongIntCursor>
+    {
+        private final LongIntCursor cursor = new LongIntCursor();
+
+        @Override
+        protected LongIntCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = pos;
+            cursor.key = keyAt(pos);
+            cursor.value = valueAt(pos);
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<LongIntCursor> iterator()
+    {
+        return new EntryIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        final long [] table = this.table;
+        for (int base = 0; base < table.length; base += BUCKET_STRIDE)
+        {
+            for (int s = 0; s < BUCKET_SLOTS; s++)
+            {
+                if (table[base + s] != 0)
+                    procedure.apply(table[base + s], valueAt(base >>> BUCKET_SHIFT, s));
+            }
+        }
+
+        for (int i = 0; i < stashSize; i++)
+        {
+            procedure.apply(stashKeys[i], stashValues[i]);
+        }
+
+        if (hasZeroKey)
+            procedure.apply(0L, zeroValue);
+
+        return procedure;
+    }
+
+    /**
+     * Returns a specialized view of the keys of this associated container.
+     * The view additionally implements {@link LongLookupContainer}.
+     */
+    public KeysContainer keys()
+    {
+        return new KeysContainer();
+    }
+
+    /**
+     * A view of the keys inside this hash map.
+     */
+    public final class KeysContainer
+            extends AbstractLongCollection implements LongLookupContainer
+    {
+        private final LongIntCuckooHashMap owner =
+                LongIntCuckooHashMap.this;
+
+        @Override
+        public boolean contains(long e)
+        {
+            return containsKey(e);
+        }
+
+        @Override
+        public <T extends LongProcedure> T forEach(final T procedure)
+        {
+            owner.forEach(new LongIntProcedure()
+            {
+                public void apply(long key, int value)
+                {
+                    procedure.apply(key);
+                }
+            });
+            return procedure;
+        }
+
+        @Override
+        public <T extends LongPredicate> T forEach(T predicate)
+        {
+            for (LongCursor c : this)
+            {
+                if (!predicate.apply(c.value))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return owner.isEmpty();
+        }
+
+        @Override
+        public Iterator<LongCursor> iterator()
+        {
+            return new KeysIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return owner.size();
+        }
+
+        @Override
+        public void clear()
+        {
+            owner.clear();
+        }
+
+        @Override
+        public int removeAll(LongPredicate predicate)
+        {
+            return owner.removeAll(predicate);
+        }
+
+        @Override
+        public int removeAllOccurrences(final long e)
+        {
+            final boolean hasKey = owner.containsKey(e);
+            int result = 0;
+            if (hasKey)
+            {
+                owner.remove(e);
+                result = 1;
+            }
+            return result;
+        }
+    };
+
+    /**
+     * An iterator over the set of assigned keys.
+     */
+    private final class KeysIterator extends AbstractSlotIterator<LongCursor>
+    {
+        private final LongCursor cursor = new LongCursor();
+
+        @Override
+        protected LongCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = pos;
+            cursor.value = keyAt(pos);
+            return cursor;
+        }
+    }
+
+    /**
+     * @return Returns a container with all values stored in this map.
+     */
+    @Override
+    public IntContainer values()
+    {
+        return new ValuesContainer();
+    }
+
+    /**
+     * A view over the set of values of this map.
+     */
+    private final class ValuesContainer extends AbstractIntCollection
+    {
+        @Override
+        public int size()
+        {
+            return LongIntCuckooHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return LongIntCuckooHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(int value)
+        {
+            // This is a linear scan over the values, but it's in the contract, so be it.
+            for (IntCursor c : this)
+            {
+                if (((value) == (c.value)))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public <T extends IntProcedure> T forEach(final T procedure)
+        {
+            LongIntCuckooHashMap.this.forEach(new LongIntProcedure()
+            {
+                public void apply(long key, int value)
+                {
+                    procedure.apply(value);
+                }
+            });
+            return procedure;
+        }
+
+        @Override
+        public <T extends IntPredicate> T forEach(T predicate)
+        {
+            for (IntCursor c : this)
+            {
+                if (!predicate.apply(c.value))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public Iterator<IntCursor> iterator()
+        {
+            return new ValuesIterator();
+        }
+
+        @Override
+        public int removeAllOccurrences(int e)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int removeAll(IntPredicate predicate)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An iterator over the set of assigned values.
+     */
+    private final class ValuesIterator extends AbstractSlotIterator<IntCursor>
+    {
+        private final IntCursor cursor = new IntCursor();
+
+        @Override
+        protected IntCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = pos;
+            cursor.value = valueAt(pos);
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntCuckooHashMap clone()
+    {
+        try
+        {
+            LongIntCuckooHashMap cloned =
+                    (LongIntCuckooHashMap) super.clone();
+
+            cloned.table = table.clone();
+            cloned.stashKeys = stashKeys.clone();
+            cloned.stashValues = stashValues.clone();
+            cloned.searchBuckets = null;
+            cloned.searchParents = null;
+            cloned.searchSlots = null;
+            cloned.lastSlot = -1;
+
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        boolean first = true;
+        for (LongIntCursor cursor : this)
+        {
+            if (!first) buffer.append(", ");
+            buffer.append(cursor.key);
+            buffer.append("=>");
+            buffer.append(cursor.value);
+            first = false;
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs.
+     */
+    public static LongIntCuckooHashMap from(long [] keys, int [] values)
+    {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+
+        LongIntCuckooHashMap map = new LongIntCuckooHashMap();
+        for (int i = 0; i < keys.length; i++)
+        {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Create a hash map from another associative container.
+     */
+    public static LongIntCuckooHashMap from(LongIntAssociativeContainer container)
+    {
+        return new LongIntCuckooHashMap(container);
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static LongIntCuckooHashMap newInstance()
+    {
+        return new LongIntCuckooHashMap();
+    }
+}
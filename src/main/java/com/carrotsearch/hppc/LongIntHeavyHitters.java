@@ -0,0 +1,427 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A fixed-capacity frequency counter of <code>long</code> keys implementing the
+ * <i>Space-Saving</i> heavy-hitter algorithm (Metwally, Agrawal, El Abbadi).
+ *
+ * <p>
+ * At most {@link #capacity()} keys are tracked. Counting a key that is not tracked
+ * when the counter is full evicts the key with the minimum count and the new key
+ * inherits that count (plus the increment). Any key whose true frequency exceeds
+ * <code>N / capacity</code> (where <code>N</code> is the sum of all increments) is
+ * guaranteed to be tracked; the count of a tracked key overestimates its true
+ * frequency by at most {@link #error(long)}.
+ * </p>
+ *
+ * <p>
+ * Keys are located with the same open addressing scheme (linear probing,
+ * {@link com.carrotsearch.hppc.hash.MurmurHash3} rehashing) as {@link LongIntOpenHashMap};
+ * the counters are kept in a binary min-heap so that the minimum can be evicted in
+ * logarithmic time. All buffers are allocated up front and never resized, so
+ * {@link #add(long, int)} does not allocate.
+ * </p>
+ *
+ * @see LongIntOpenHashMap#putOrAdd(long, int, int)
+ */
+public class LongIntHeavyHitters implements Cloneable, Serializable
+{
+    /**
+     * Load factor of the hash table (relative to the number of tracked keys).
+     */
+    private final static float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Hash-indexed array holding all tracked keys.
+     */
+    public long [] keys;
+
+    /**
+     * Hash-indexed array with the heap position of the counter for each key
+     * in {@link #keys}.
+     */
+    public int [] heapIndex;
+
+    /**
+     * Information if an entry (slot) in the {@link #keys} table is allocated
+     * or empty.
+     */
+    public boolean [] allocated;
+
+    /**
+     * Heap-ordered (minimum first) counts.
+     */
+    public int [] counts;
+
+    /**
+     * Heap-ordered maximum overestimation of {@link #counts}.
+     */
+    public int [] errors;
+
+    /**
+     * Heap-ordered hash table slot of each counter's key.
+     */
+    public int [] tableSlot;
+
+    /**
+     * Number of tracked keys.
+     */
+    public int assigned;
+
+    /**
+     * Creates a counter tracking at most <code>capacity</code> keys.
+     *
+     * @param capacity The maximum number of tracked keys (greater than zero).
+     */
+    public LongIntHeavyHitters(int capacity)
+    {
+        assert capacity > 0 && capacity <= (0x80000000 >>> 2)
+                : "Capacity must be between (0, " + (0x80000000 >>> 2) + "].";
+
+        final int tableSize = BitUtil.nextHighestPowerOfTwo(
+                Math.max(LongIntOpenHashMap.MIN_CAPACITY, (int) Math.ceil(capacity / LOAD_FACTOR)));
+
+        this.keys = new long [tableSize];
+        this.heapIndex = new int [tableSize];
+        this.allocated = new boolean [tableSize];
+
+        this.counts = new int [capacity];
+        this.errors = new int [capacity];
+        this.tableSlot = new int [capacity];
+    }
+
+    /**
+     * Count one occurrence of <code>key</code>.
+     *
+     * @return Returns the estimated count of <code>key</code> (after changes).
+     */
+    public int add(long key)
+    {
+        return add(key, 1);
+    }
+
+    /**
+     * Count <code>increment</code> occurrences of <code>key</code>. If the key
+     * is not tracked and the counter is full, the key with the minimum count
+     * is evicted.
+     *
+     * @param increment The number of occurrences (non-negative).
+     * @return Returns the estimated count of <code>key</code> (after changes).
+     */
+    public int add(long key, int increment)
+    {
+        assert increment >= 0 : "Increment must not be negative.";
+
+        final int mask = allocated.length - 1;
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                final int h = heapIndex[slot];
+                final int v = counts[h] += increment;
+                siftDown(h);
+                return v;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        final int h;
+        final int base;
+        if (assigned < counts.length)
+        {
+            h = assigned++;
+            base = 0;
+        }
+        else
+        {
+            // Evict the minimum (root) counter and reuse it for the new key.
+            h = 0;
+            base = counts[0];
+            removeSlot(tableSlot[0]);
+
+            // Removal may have shifted the free slot for the new key.
+            slot = rehash(key) & mask;
+            while (allocated[slot])
+            {
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        allocated[slot] = true;
+        keys[slot] = key;
+        heapIndex[slot] = h;
+
+        tableSlot[h] = slot;
+        errors[h] = base;
+        final int v = counts[h] = base + increment;
+        if (h == 0)
+            siftDown(h);
+        else
+            siftUp(h);
+        return v;
+    }
+
+    /**
+     * @return Returns the estimated count of <code>key</code> or <code>0</code>
+     * if the key is not tracked.
+     */
+    public int get(long key)
+    {
+        final int slot = slotOf(key);
+        return slot >= 0 ? counts[heapIndex[slot]] : 0;
+    }
+
+    /**
+     * @return Returns the maximum overestimation of {@link #get(long)} for
+     * <code>key</code> or <code>0</code> if the key is not tracked.
+     */
+    public int error(long key)
+    {
+        final int slot = slotOf(key);
+        return slot >= 0 ? errors[heapIndex[slot]] : 0;
+    }
+
+    /**
+     * @return Returns <code>true</code> if <code>key</code> is currently tracked.
+     */
+    public boolean contains(long key)
+    {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * @return Returns the minimum count among tracked keys (the count a new key
+     * would inherit) or <code>0</code> if the counter is not full.
+     */
+    public int minCount()
+    {
+        return assigned < counts.length ? 0 : counts[0];
+    }
+
+    /**
+     * Write up to <code>k</code> tracked keys with the highest counts, in descending
+     * order of counts, to the given arrays.
+     *
+     * @return Returns the number of keys written, <code>min(k, size())</code>.
+     */
+    public int topK(int k, long [] keysOut, int [] countsOut)
+    {
+        k = Math.min(k, assigned);
+        if (keysOut.length < k || countsOut.length < k)
+            throw new IllegalArgumentException("Output arrays must hold at least " + k + " elements.");
+
+        // Counts are non-negative, so (count, heap index) pairs sort as longs.
+        final long [] order = new long [assigned];
+        for (int i = 0; i < assigned; i++)
+        {
+            order[i] = ((long) counts[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        for (int i = 0; i < k; i++)
+        {
+            final int h = (int) order[assigned - 1 - i];
+            keysOut[i] = keys[tableSlot[h]];
+            countsOut[i] = counts[h];
+        }
+        return k;
+    }
+
+    /**
+     * Applies <code>procedure</code> to all tracked keys and their estimated counts,
+     * in no particular order.
+     */
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        for (int h = 0; h < assigned; h++)
+        {
+            procedure.apply(keys[tableSlot[h]], counts[h]);
+        }
+        return procedure;
+    }
+
+    /**
+     * @return Returns the number of tracked keys.
+     */
+    public int size()
+    {
+        return assigned;
+    }
+
+    /**
+     * @return Returns the maximum number of tracked keys.
+     */
+    public int capacity()
+    {
+        return counts.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Forget all keys. Does not release internal buffers.
+     */
+    public void clear()
+    {
+        assigned = 0;
+        Arrays.fill(allocated, false);
+    }
+
+    private int slotOf(long key)
+    {
+        final int mask = allocated.length - 1;
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Remove the key at <code>slotCurr</code>, shifting conflicting keys (and updating
+     * their counters' back references).
+     */
+    private void removeSlot(int slotCurr)
+    {
+        final int mask = allocated.length - 1;
+        int slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (allocated[slotCurr])
+            {
+                slotOther = rehash(keys[slotCurr]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    // we're on the right of the original slot.
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    // we've wrapped around.
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (!allocated[slotCurr])
+                break;
+
+            // Shift key and fix the counter's table reference.
+            keys[slotPrev] = keys[slotCurr];
+            heapIndex[slotPrev] = heapIndex[slotCurr];
+            tableSlot[heapIndex[slotPrev]] = slotPrev;
+        }
+
+        allocated[slotPrev] = false;
+    }
+
+    private void siftUp(int h)
+    {
+        while (h > 0)
+        {
+            final int parent = (h - 1) >>> 1;
+            if (counts[parent] <= counts[h])
+                break;
+            swap(parent, h);
+            h = parent;
+        }
+    }
+
+    private void siftDown(int h)
+    {
+        final int size = assigned;
+        while (true)
+        {
+            int smallest = h;
+            final int left = (h << 1) + 1;
+            final int right = left + 1;
+            if (left < size && counts[left] < counts[smallest])
+                smallest = left;
+            if (right < size && counts[right] < counts[smallest])
+                smallest = right;
+            if (smallest == h)
+                break;
+            swap(h, smallest);
+            h = smallest;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        final int count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+
+        final int error = errors[a];
+        errors[a] = errors[b];
+        errors[b] = error;
+
+        final int slot = tableSlot[a];
+        tableSlot[a] = tableSlot[b];
+        tableSlot[b] = slot;
+
+        heapIndex[tableSlot[a]] = a;
+        heapIndex[tableSlot[b]] = b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntHeavyHitters clone()
+    {
+        try
+        {
+            LongIntHeavyHitters cloned = (LongIntHeavyHitters) super.clone();
+            cloned.keys = keys.clone();
+            cloned.heapIndex = heapIndex.clone();
+            cloned.allocated = allocated.clone();
+            cloned.counts = counts.clone();
+            cloned.errors = errors.clone();
+            cloned.tableSlot = tableSlot.clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this counter to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+        for (int h = 0; h < assigned; h++)
+        {
+            if (h > 0) buffer.append(", ");
+            buffer.append(keys[tableSlot[h]]);
+            buffer.append("=>");
+            buffer.append(counts[h]);
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,621 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * Many small hash maps of <code>long</code> to <code>int</code> stored in shared
+ * primitive arenas and addressed by <code>int</code> handles.
+ *
+ * <p>
+ * Every map owned by the arena is a block of <code>2^n</code> consecutive slots of
+ * {@link #keys} and {@link #values}; per-map state is just a block offset, a size class
+ * and a size. Compared to one {@link LongIntOpenHashMap} per map this saves the object
+ * headers, the three arrays and the per-map fields, so millions of tiny maps cost
+ * little more than their payload and a handful of objects for the garbage collector.
+ * </p>
+ *
+ * <p>
+ * Blocks of up to {@link #LINEAR_CAPACITY} slots hold their entries densely and are
+ * searched with a linear scan. Larger blocks are open addressing tables with linear
+ * probing (like {@link LongIntOpenHashMap}) whose allocated slots are tracked in the
+ * {@link #occupied} bit set. A map that outgrows its block is relocated to a block twice
+ * as large; released blocks are kept in per-size free lists and reused before the arena
+ * grows. Released handles are reused as well.
+ * </p>
+ *
+ * <p>
+ * Handles are only valid until they are {@link #release(int) released}; using a released
+ * handle is not detected (with assertions disabled).
+ * </p>
+ */
+public class LongIntMapArena implements Cloneable, Serializable
+{
+    /**
+     * Default number of arena slots.
+     */
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Maximum number of slots of a block searched with a linear scan.
+     */
+    public final static int LINEAR_CAPACITY = 8;
+
+    private final static int LINEAR_CLASS = 3;
+
+    /**
+     * Size class of the first block of a map.
+     */
+    private final static int MIN_CLASS = 1;
+
+    /**
+     * The number of size classes (the largest block has <code>2^(CLASSES-1)</code> slots).
+     */
+    private final static int CLASSES = 30;
+
+    /**
+     * Block class of maps without a block.
+     */
+    private final static byte NO_BLOCK = -1;
+
+    /**
+     * End of a free list.
+     */
+    private final static int NIL = -1;
+
+    /**
+     * Arena of keys of all maps.
+     */
+    public long [] keys;
+
+    /**
+     * Arena of values of all maps, aligned with {@link #keys}. The first value of a free
+     * block links to the next free block of the same size.
+     */
+    public int [] values;
+
+    /**
+     * Allocated slots of hashed (larger than {@link #LINEAR_CAPACITY}) blocks, one bit
+     * per arena slot.
+     */
+    public long [] occupied;
+
+    /**
+     * The first arena slot that was never allocated.
+     */
+    private int arenaTop;
+
+    /**
+     * Heads of the free block lists, one per size class.
+     */
+    private int [] freeBlocks = new int [CLASSES];
+
+    /**
+     * Block offset of each handle (the next free handle for released handles).
+     */
+    private int [] blockOffset;
+
+    /**
+     * Size class (<code>log2</code> of the block capacity) of each handle or
+     * {@link #NO_BLOCK}.
+     */
+    private byte [] blockClass;
+
+    /**
+     * Number of entries of each handle, <code>-1</code> for released handles.
+     */
+    private int [] mapSize;
+
+    /**
+     * The first handle that was never allocated.
+     */
+    private int handleTop;
+
+    /**
+     * Head of the released handles list.
+     */
+    private int freeHandle = NIL;
+
+    /**
+     * Number of live maps.
+     */
+    private int maps;
+
+    /**
+     * Creates an arena with the default capacity of {@value #DEFAULT_CAPACITY} slots.
+     */
+    public LongIntMapArena()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an arena with the given initial number of slots (grown as needed).
+     */
+    public LongIntMapArena(int initialCapacity)
+    {
+        assert initialCapacity > 0 : "Initial capacity must be greater than zero.";
+
+        this.keys = new long [initialCapacity];
+        this.values = new int [initialCapacity];
+        this.occupied = new long [bits(initialCapacity)];
+
+        this.blockOffset = new int [16];
+        this.blockClass = new byte [16];
+        this.mapSize = new int [16];
+
+        Arrays.fill(freeBlocks, NIL);
+    }
+
+    /**
+     * Create a new, empty map. No arena slots are allocated until the first
+     * entry is added.
+     *
+     * @return Returns the handle of the new map.
+     */
+    public int newMap()
+    {
+        final int handle;
+        if (freeHandle != NIL)
+        {
+            handle = freeHandle;
+            freeHandle = blockOffset[handle];
+        }
+        else
+        {
+            if (handleTop == mapSize.length)
+            {
+                final int length = mapSize.length + (mapSize.length >>> 1);
+                blockOffset = Arrays.copyOf(blockOffset, length);
+                blockClass = Arrays.copyOf(blockClass, length);
+                mapSize = Arrays.copyOf(mapSize, length);
+            }
+            handle = handleTop++;
+        }
+
+        blockOffset[handle] = 0;
+        blockClass[handle] = NO_BLOCK;
+        mapSize[handle] = 0;
+        maps++;
+        return handle;
+    }
+
+    /**
+     * Release the map and its slots. The handle may be returned by a subsequent
+     * {@link #newMap()}.
+     */
+    public void release(int handle)
+    {
+        assert mapSize[handle] >= 0 : "Map already released: " + handle;
+
+        if (blockClass[handle] != NO_BLOCK)
+            freeBlock(blockOffset[handle], blockClass[handle]);
+
+        mapSize[handle] = -1;
+        blockOffset[handle] = freeHandle;
+        freeHandle = handle;
+        maps--;
+    }
+
+    /**
+     * Put a key-value pair into the map <code>handle</code>.
+     *
+     * @return Returns the previous value stored under <code>key</code> or <code>0</code>.
+     */
+    public int put(int handle, long key, int value)
+    {
+        final int slot = slotOf(handle, key);
+        if (slot >= 0)
+        {
+            final int oldValue = values[slot];
+            values[slot] = value;
+            return oldValue;
+        }
+
+        insert(handle, key, value);
+        return ((int) 0);
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putOrAdd(long, int, int)} for the map
+     * <code>handle</code>.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public int putOrAdd(int handle, long key, int putValue, int additionValue)
+    {
+        final int slot = slotOf(handle, key);
+        if (slot >= 0)
+        {
+            return values[slot] += additionValue;
+        }
+
+        insert(handle, key, putValue);
+        return putValue;
+    }
+
+    /**
+     * @return Returns the value stored under <code>key</code> in the map
+     * <code>handle</code> or <code>0</code>.
+     */
+    public int get(int handle, long key)
+    {
+        final int slot = slotOf(handle, key);
+        return slot >= 0 ? values[slot] : ((int) 0);
+    }
+
+    /**
+     * @return Returns <code>true</code> if the map <code>handle</code> contains <code>key</code>.
+     */
+    public boolean containsKey(int handle, long key)
+    {
+        return slotOf(handle, key) >= 0;
+    }
+
+    /**
+     * Remove <code>key</code> from the map <code>handle</code>.
+     *
+     * @return Returns the value stored under <code>key</code> or <code>0</code>.
+     */
+    public int remove(int handle, long key)
+    {
+        final int slot = slotOf(handle, key);
+        if (slot < 0)
+            return ((int) 0);
+
+        final int v = values[slot];
+        final int offset = blockOffset[handle];
+        final int size = --mapSize[handle];
+        if (blockClass[handle] <= LINEAR_CLASS)
+        {
+            // Move the last entry into the hole.
+            keys[slot] = keys[offset + size];
+            values[slot] = values[offset + size];
+        }
+        else
+        {
+            shiftConflictingKeys(offset, 1 << blockClass[handle], slot);
+        }
+        return v;
+    }
+
+    /**
+     * @return Returns the number of entries in the map <code>handle</code>.
+     */
+    public int size(int handle)
+    {
+        assert mapSize[handle] >= 0 : "Map released: " + handle;
+
+        return mapSize[handle];
+    }
+
+    /**
+     * Remove all entries of the map <code>handle</code>, releasing its slots.
+     */
+    public void clear(int handle)
+    {
+        if (blockClass[handle] != NO_BLOCK)
+            freeBlock(blockOffset[handle], blockClass[handle]);
+
+        blockClass[handle] = NO_BLOCK;
+        mapSize[handle] = 0;
+    }
+
+    /**
+     * Applies <code>procedure</code> to all entries of the map <code>handle</code>,
+     * in no particular order.
+     */
+    public <T extends LongIntProcedure> T forEach(int handle, T procedure)
+    {
+        final int cls = blockClass[handle];
+        if (cls == NO_BLOCK)
+            return procedure;
+
+        final long [] keys = this.keys;
+        final int [] values = this.values;
+        final int offset = blockOffset[handle];
+        if (cls <= LINEAR_CLASS)
+        {
+            final int end = offset + mapSize[handle];
+            for (int i = offset; i < end; i++)
+            {
+                procedure.apply(keys[i], values[i]);
+            }
+        }
+        else
+        {
+            final int end = offset + (1 << cls);
+            for (int i = offset; i < end; i++)
+            {
+                if (isOccupied(i))
+                    procedure.apply(keys[i], values[i]);
+            }
+        }
+        return procedure;
+    }
+
+    /**
+     * @return Returns the number of live (not released) maps.
+     */
+    public int mapCount()
+    {
+        return maps;
+    }
+
+    /**
+     * @return Returns the number of arena slots in use or on free lists.
+     */
+    public int arenaSize()
+    {
+        return arenaTop;
+    }
+
+    /**
+     * Release all maps and reset the arena. Does not release internal buffers.
+     */
+    public void clear()
+    {
+        arenaTop = 0;
+        handleTop = 0;
+        freeHandle = NIL;
+        maps = 0;
+        Arrays.fill(freeBlocks, NIL);
+    }
+
+    /**
+     * @return Returns the arena slot of <code>key</code> or <code>-1</code>.
+     */
+    private int slotOf(int handle, long key)
+    {
+        assert mapSize[handle] >= 0 : "Map released: " + handle;
+
+        final int cls = blockClass[handle];
+        if (cls == NO_BLOCK)
+            return -1;
+
+        final long [] keys = this.keys;
+        final int offset = blockOffset[handle];
+        if (cls <= LINEAR_CLASS)
+        {
+            final int end = offset + mapSize[handle];
+            for (int i = offset; i < end; i++)
+            {
+                if (((key) == (keys[i])))
+                    return i;
+            }
+            return -1;
+        }
+
+        final int mask = (1 << cls) - 1;
+        int slot = rehash(key) & mask;
+        while (isOccupied(offset + slot))
+        {
+            if (((key) == (keys[offset + slot])))
+            {
+                return offset + slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Insert a key known not to be in the map, relocating the map to a larger
+     * block if needed.
+     */
+    private void insert(int handle, long key, int value)
+    {
+        final int size = mapSize[handle];
+        int cls = blockClass[handle];
+        if (cls == NO_BLOCK)
+        {
+            blockOffset[handle] = allocateBlock(MIN_CLASS);
+            blockClass[handle] = (byte) (cls = MIN_CLASS);
+        }
+        else if (cls <= LINEAR_CLASS ? size == (1 << cls) : size >= (3 << cls) >>> 2)
+        {
+            relocate(handle, cls + 1);
+            cls = cls + 1;
+        }
+
+        mapSize[handle] = size + 1;
+        final int offset = blockOffset[handle];
+        if (cls <= LINEAR_CLASS)
+        {
+            keys[offset + size] = key;
+            values[offset + size] = value;
+        }
+        else
+        {
+            insertHashed(offset, 1 << cls, key, value);
+        }
+    }
+
+    private void insertHashed(int offset, int capacity, long key, int value)
+    {
+        final int mask = capacity - 1;
+        int slot = rehash(key) & mask;
+        while (isOccupied(offset + slot))
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        setOccupied(offset + slot);
+        keys[offset + slot] = key;
+        values[offset + slot] = value;
+    }
+
+    /**
+     * Move the entries of the map <code>handle</code> to a new block of class
+     * <code>cls</code> and free the old one.
+     */
+    private void relocate(int handle, int cls)
+    {
+        assert cls < CLASSES : "Maximum map capacity exceeded (" + (1 << (CLASSES - 1)) + ").";
+
+        final int newOffset = allocateBlock(cls);
+        final int oldOffset = blockOffset[handle];
+        final int oldClass = blockClass[handle];
+        final int size = mapSize[handle];
+
+        if (cls <= LINEAR_CLASS)
+        {
+            System.arraycopy(keys, oldOffset, keys, newOffset, size);
+            System.arraycopy(values, oldOffset, values, newOffset, size);
+        }
+        else if (oldClass <= LINEAR_CLASS)
+        {
+            for (int i = oldOffset; i < oldOffset + size; i++)
+            {
+                insertHashed(newOffset, 1 << cls, keys[i], values[i]);
+            }
+        }
+        else
+        {
+            final int end = oldOffset + (1 << oldClass);
+            for (int i = oldOffset; i < end; i++)
+            {
+                if (isOccupied(i))
+                    insertHashed(newOffset, 1 << cls, keys[i], values[i]);
+            }
+        }
+
+        freeBlock(oldOffset, oldClass);
+        blockOffset[handle] = newOffset;
+        blockClass[handle] = (byte) cls;
+    }
+
+    /**
+     * Take a block of class <code>cls</code> from its free list or the end of the arena.
+     */
+    private int allocateBlock(int cls)
+    {
+        final int capacity = 1 << cls;
+        int offset = freeBlocks[cls];
+        if (offset != NIL)
+        {
+            freeBlocks[cls] = values[offset];
+        }
+        else
+        {
+            offset = arenaTop;
+            if (keys.length - offset < capacity)
+                expandArena(offset + capacity);
+            arenaTop = offset + capacity;
+        }
+
+        if (cls > LINEAR_CLASS)
+            clearOccupied(offset, offset + capacity);
+        return offset;
+    }
+
+    private void freeBlock(int offset, int cls)
+    {
+        values[offset] = freeBlocks[cls];
+        freeBlocks[cls] = offset;
+    }
+
+    private void expandArena(int minCapacity)
+    {
+        assert minCapacity > 0 : "Maximum arena capacity exceeded.";
+
+        final int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(minCapacity, keys.length + ((long) keys.length >>> 1)));
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        occupied = Arrays.copyOf(occupied, bits(capacity));
+    }
+
+    /**
+     * Shift all the slot-conflicting keys of the hashed block at <code>offset</code>
+     * allocated to (and including) arena slot <code>slot</code>.
+     */
+    private void shiftConflictingKeys(int offset, int capacity, int slot)
+    {
+        final int mask = capacity - 1;
+        int slotCurr = slot - offset;
+        int slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (isOccupied(offset + slotCurr))
+            {
+                slotOther = rehash(keys[offset + slotCurr]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    // we're on the right of the original slot.
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    // we've wrapped around.
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (!isOccupied(offset + slotCurr))
+                break;
+
+            // Shift key/value pair.
+            keys[offset + slotPrev] = keys[offset + slotCurr];
+            values[offset + slotPrev] = values[offset + slotCurr];
+        }
+
+        clearOccupied(offset + slotPrev, offset + slotPrev + 1);
+    }
+
+    private static int bits(int capacity)
+    {
+        return (capacity + 63) >>> 6;
+    }
+
+    private boolean isOccupied(int slot)
+    {
+        return (occupied[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void setOccupied(int slot)
+    {
+        occupied[slot >>> 6] |= (1L << slot);
+    }
+
+    private void clearOccupied(int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            occupied[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntMapArena clone()
+    {
+        try
+        {
+            LongIntMapArena cloned = (LongIntMapArena) super.clone();
+            cloned.keys = keys.clone();
+            cloned.values = values.clone();
+            cloned.occupied = occupied.clone();
+            cloned.freeBlocks = freeBlocks.clone();
+            cloned.blockOffset = blockOffset.clone();
+            cloned.blockClass = blockClass.clone();
+            cloned.mapSize = mapSize.clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
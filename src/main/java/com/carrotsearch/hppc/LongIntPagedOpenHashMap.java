@@ -0,0 +1,1064 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.cursors.*;
+import com.carrotsearch.hppc.hash.MurmurHash3;
+import com.carrotsearch.hppc.predicates.*;
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A hash map of <code>long</code> to <code>int</code>, implemented using open
+ * addressing with linear probing (exactly like {@link LongIntOpenHashMap}) over
+ * <i>paged</i> buffers.
+ *
+ * <p>
+ * Instead of a single array per buffer, {@link #keys}, {@link #values} and
+ * {@link #allocated} are split into pages of at most {@link #PAGE_SIZE} slots
+ * addressed by a <code>long</code> slot index. No single allocation is larger than a
+ * page, so large maps do not create humongous objects (G1) or require large contiguous
+ * free regions when they grow; when the map is expanded, new pages are allocated one at
+ * a time and old pages become garbage as soon as their keys are rehashed. The number of
+ * slots is not limited to <code>2^30</code> either (see {@link #MAX_CAPACITY}).
+ * </p>
+ *
+ * <p>
+ * The extra indirection makes this map somewhat slower than {@link LongIntOpenHashMap};
+ * prefer it only for very large maps.
+ * </p>
+ *
+ * @see LongIntOpenHashMap
+ */
+public class LongIntPagedOpenHashMap
+        implements LongIntMap, Cloneable, Serializable
+{
+    /**
+     * Default capacity.
+     */
+    public final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Minimum capacity for the map.
+     */
+    public final static int MIN_CAPACITY = 4;
+
+    /**
+     * Default load factor.
+     */
+    public final static float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Bits of the slot index addressing a slot within a page.
+     */
+    public final static int PAGE_SHIFT = 15;
+
+    /**
+     * The number of slots in a full page (a <code>long</code> page is 256kB, below
+     * the humongous object threshold of the smallest G1 region size).
+     */
+    public final static int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final static int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Maximum number of slots.
+     */
+    public final static long MAX_CAPACITY = 1L << 40;
+
+    /**
+     * Hash-indexed pages holding all keys.
+     */
+    public long [][] keys;
+
+    /**
+     * Hash-indexed pages holding all values associated to the keys
+     * stored in {@link #keys}.
+     */
+    public int [][] values;
+
+    /**
+     * Information if an entry (slot) in the {@link #values} pages is allocated
+     * or empty.
+     */
+    public boolean [][] allocated;
+
+    /**
+     * Cached number of assigned slots in {@link #allocated}.
+     */
+    public long assigned;
+
+    /**
+     * The load factor for this map (fraction of allocated slots
+     * before the buffers must be rehashed or reallocated).
+     */
+    public final float loadFactor;
+
+    /**
+     * The number of slots (a power of two).
+     */
+    private long capacity;
+
+    /**
+     * Cached capacity threshold at which we must resize the buffers.
+     */
+    private long resizeThreshold;
+
+    /**
+     * The most recent slot accessed in {@link #containsKey} (required for
+     * {@link #lget}).
+     *
+     * @see #containsKey
+     * @see #lget
+     */
+    private long lastSlot;
+
+    /**
+     * Creates a hash map with the default capacity of {@value #DEFAULT_CAPACITY},
+     * load factor of {@value #DEFAULT_LOAD_FACTOR}.
+     */
+    public LongIntPagedOpenHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity, default load factor of
+     * {@value #DEFAULT_LOAD_FACTOR}.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     */
+    public LongIntPagedOpenHashMap(long initialCapacity)
+    {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial capacity,
+     * load factor.
+     *
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public LongIntPagedOpenHashMap(long initialCapacity, float loadFactor)
+    {
+        initialCapacity = Math.max(initialCapacity, MIN_CAPACITY);
+
+        assert initialCapacity > 0 && initialCapacity <= MAX_CAPACITY
+                : "Initial capacity must be between (0, " + MAX_CAPACITY + "].";
+        assert loadFactor > 0 && loadFactor <= 1
+                : "Load factor must be between (0, 1].";
+
+        this.loadFactor = loadFactor;
+        allocateBuffers(roundCapacity(initialCapacity));
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public LongIntPagedOpenHashMap(LongIntAssociativeContainer container)
+    {
+        this((long) (container.size() * (1 + DEFAULT_LOAD_FACTOR)));
+        putAll(container);
+    }
+
+    private static long slotHash(long key)
+    {
+        return MurmurHash3.hash(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int put(long key, int value)
+    {
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        final long mask = capacity - 1;
+        long slot = slotHash(key) & mask;
+        while (allocated[page(slot)][offset(slot)])
+        {
+            final int p = page(slot), o = offset(slot);
+            if (((key) == (keys[p][o])))
+            {
+                final int oldValue = values[p][o];
+                values[p][o] = value;
+                return oldValue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        final int p = page(slot), o = offset(slot);
+        assigned++;
+        allocated[p][o] = true;
+        keys[p][o] = key;
+        values[p][o] = value;
+        return ((int) 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int putAll(
+            LongIntAssociativeContainer container)
+    {
+        final long count = this.assigned;
+        for (LongIntCursor c : container)
+        {
+            put(c.key, c.value);
+        }
+        return (int) (this.assigned - count);
+    }
+
+    /**
+     * Puts all key/value pairs from a given iterable into this map.
+     */
+    @Override
+    public final int putAll(
+            Iterable<? extends LongIntCursor> iterable)
+    {
+        final long count = this.assigned;
+        for (LongIntCursor c : iterable)
+        {
+            put(c.key, c.value);
+        }
+        return (int) (this.assigned - count);
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putIfAbsent(long, int)}.
+     */
+    public final boolean putIfAbsent(long key, int value)
+    {
+        if (!containsKey(key))
+        {
+            put(key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putOrAdd(long, int, int)}.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public final int putOrAdd(long key, int putValue, int additionValue)
+    {
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        final long mask = capacity - 1;
+        long slot = slotHash(key) & mask;
+        while (allocated[page(slot)][offset(slot)])
+        {
+            final int p = page(slot), o = offset(slot);
+            if (((key) == (keys[p][o])))
+            {
+                return values[p][o] += additionValue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        final int p = page(slot), o = offset(slot);
+        assigned++;
+        allocated[p][o] = true;
+        keys[p][o] = key;
+        return values[p][o] = putValue;
+    }
+
+    /**
+     * Expand the internal storage buffers (capacity) or rehash current
+     * keys and values if there are a lot of deleted slots.
+     */
+    private void expandAndRehash()
+    {
+        final long [][] oldKeys = this.keys;
+        final int [][] oldValues = this.values;
+        final boolean [][] oldStates = this.allocated;
+
+        assert assigned >= resizeThreshold;
+        assert capacity < MAX_CAPACITY
+                : "Maximum capacity exceeded (" + MAX_CAPACITY + ").";
+        allocateBuffers(capacity << 1);
+
+        /*
+         * Rehash all assigned slots from the old pages. Each old page is released
+         * once it has been copied, so it can be collected while the rest are moved.
+         */
+        final long mask = capacity - 1;
+        for (int p = 0; p < oldStates.length; p++)
+        {
+            final long [] pageKeys = oldKeys[p];
+            final int [] pageValues = oldValues[p];
+            final boolean [] pageStates = oldStates[p];
+            for (int i = 0; i < pageStates.length; i++)
+            {
+                if (pageStates[i])
+                {
+                    final long key = pageKeys[i];
+
+                    long slot = slotHash(key) & mask;
+                    while (allocated[page(slot)][offset(slot)])
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+
+                    final int np = page(slot), no = offset(slot);
+                    allocated[np][no] = true;
+                    keys[np][no] = key;
+                    values[np][no] = pageValues[i];
+                }
+            }
+
+            oldKeys[p] = null;
+            oldValues[p] = null;
+            oldStates[p] = null;
+        }
+
+        lastSlot = -1;
+    }
+
+    /**
+     * Allocate internal pages for a given capacity.
+     *
+     * @param capacity New capacity (must be a power of two).
+     */
+    private void allocateBuffers(long capacity)
+    {
+        final int pages = (int) Math.max(1, capacity >>> PAGE_SHIFT);
+        final int pageSize = (int) Math.min(capacity, PAGE_SIZE);
+
+        this.keys = new long [pages][];
+        this.values = new int [pages][];
+        this.allocated = new boolean [pages][];
+        for (int p = 0; p < pages; p++)
+        {
+            this.keys[p] = new long [pageSize];
+            this.values[p] = new int [pageSize];
+            this.allocated[p] = new boolean [pageSize];
+        }
+
+        this.capacity = capacity;
+        this.resizeThreshold = (long) (capacity * (double) loadFactor);
+    }
+
+    static int page(long slot)
+    {
+        return (int) (slot >>> PAGE_SHIFT);
+    }
+
+    static int offset(long slot)
+    {
+        return (int) slot & PAGE_MASK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int remove(long key)
+    {
+        final long slot = slotOf(key);
+        if (slot >= 0)
+        {
+            final int v = values[page(slot)][offset(slot)];
+            assigned--;
+            shiftConflictingKeys(slot);
+            return v;
+        }
+        return ((int) 0);
+    }
+
+    /**
+     * @return Returns the slot of <code>key</code> or <code>-1</code> if not found.
+     */
+    private long slotOf(long key)
+    {
+        final long mask = capacity - 1;
+        long slot = slotHash(key) & mask;
+        while (allocated[page(slot)][offset(slot)])
+        {
+            if (((key) == (keys[page(slot)][offset(slot)])))
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Shift all the slot-conflicting keys allocated to (and including) <code>slot</code>.
+     */
+    protected void shiftConflictingKeys(long slotCurr)
+    {
+        // Copied nearly verbatim from fastutil's impl.
+        final long mask = capacity - 1;
+        long slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (allocated[page(slotCurr)][offset(slotCurr)])
+            {
+                slotOther = slotHash(keys[page(slotCurr)][offset(slotCurr)]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    // we're on the right of the original slot.
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    // we've wrapped around.
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (!allocated[page(slotCurr)][offset(slotCurr)])
+                break;
+
+            // Shift key/value pair.
+            keys[page(slotPrev)][offset(slotPrev)] = keys[page(slotCurr)][offset(slotCurr)];
+            values[page(slotPrev)][offset(slotPrev)] = values[page(slotCurr)][offset(slotCurr)];
+        }
+
+        allocated[page(slotPrev)][offset(slotPrev)] = false;
+        lastSlot = -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongContainer container)
+    {
+        final long before = this.assigned;
+
+        for (LongCursor cursor : container)
+        {
+            remove(cursor.value);
+        }
+
+        return (int) (before - this.assigned);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongPredicate predicate)
+    {
+        final long before = this.assigned;
+
+        for (long slot = 0; slot < capacity;)
+        {
+            final int p = page(slot), o = offset(slot);
+            if (allocated[p][o])
+            {
+                if (predicate.apply(keys[p][o]))
+                {
+                    assigned--;
+                    shiftConflictingKeys(slot);
+                    // Repeat the check for the same slot.
+                    continue;
+                }
+            }
+            slot++;
+        }
+
+        return (int) (before - this.assigned);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int get(long key)
+    {
+        final long slot = slotOf(key);
+        return slot >= 0 ? values[page(slot)][offset(slot)] : ((int) 0);
+    }
+
+    /**
+     * Returns the last value saved in a call to {@link #containsKey}.
+     *
+     * @see #containsKey
+     */
+    public int lget()
+    {
+        assert lastSlot >= 0 : "Call containsKey() first.";
+        assert allocated[page(lastSlot)][offset(lastSlot)] : "Last call to exists did not have any associated value.";
+
+        return values[page(lastSlot)][offset(lastSlot)];
+    }
+
+    /**
+     * Sets the value corresponding to the key saved in the last
+     * call to {@link #containsKey}, if and only if the key exists
+     * in the map already.
+     *
+     * @see #containsKey
+     * @return Returns the previous value stored under the given key.
+     */
+    public int lset(int value)
+    {
+        assert lastSlot >= 0 : "Call containsKey() first.";
+        assert allocated[page(lastSlot)][offset(lastSlot)] : "Last call to exists did not have any associated value.";
+
+        final int p = page(lastSlot), o = offset(lastSlot);
+        final int previous = values[p][o];
+        values[p][o] = value;
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Saves the associated value for fast access using {@link #lget}
+     * or {@link #lset}.</p>
+     */
+    @Override
+    public boolean containsKey(long key)
+    {
+        return (lastSlot = slotOf(key)) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Does not release internal buffers.</p>
+     */
+    @Override
+    public void clear()
+    {
+        assigned = 0;
+        lastSlot = -1;
+
+        for (boolean [] page : allocated)
+        {
+            Arrays.fill(page, false);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Saturates at {@link Integer#MAX_VALUE}, see {@link #sizeLong()}.</p>
+     */
+    @Override
+    public int size()
+    {
+        return (int) Math.min(assigned, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return Returns the number of keys in this map (which may exceed the
+     * range of {@link #size()}).
+     */
+    public long sizeLong()
+    {
+        return assigned;
+    }
+
+    /**
+     * @return Returns the number of slots in this map's buffers.
+     */
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEmpty()
+    {
+        return assigned == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        int h = 0;
+        for (LongIntCursor c : this)
+        {
+            h += rehash(c.key) + rehash(c.value);
+        }
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj != null)
+        {
+            if (obj == this) return true;
+
+            if (obj instanceof LongIntPagedOpenHashMap)
+            {
+                if (((LongIntPagedOpenHashMap) obj).assigned != this.assigned)
+                    return false;
+            }
+
+            if (obj instanceof LongIntMap)
+            {
+                LongIntMap other = (LongIntMap) obj;
+                if (other.size() == this.size())
+                {
+                    for (LongIntCursor c : this)
+                    {
+                        if (other.containsKey(c.key))
+                        {
+                            int v = other.get(c.key);
+                            if (((c.value) == (v)))
+                            {
+                                continue;
+                            }
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An iterator over all assigned slots. The cursor's index is the slot index
+     * truncated to an <code>int</code>.
+     */
+    private abstract class AbstractSlotIterator<E> extends AbstractIterator<E>
+    {
+        private final boolean [][] states = LongIntPagedOpenHashMap.this.allocated;
+
+        protected int page;
+        protected int offset = -1;
+
+        /**
+         * Advance to the next assigned slot.
+         *
+         * @return <code>false</code> if there are no more slots.
+         */
+        protected final boolean advance()
+        {
+            while (page < states.length)
+            {
+                final boolean [] pageStates = states[page];
+                int i = offset + 1;
+                while (i < pageStates.length && !pageStates[i])
+                    i++;
+
+                if (i < pageStates.length)
+                {
+                    offset = i;
+                    return true;
+                }
+
+                page++;
+                offset = -1;
+            }
+            return false;
+        }
+
+        protected final int index()
+        {
+            return (page << PAGE_SHIFT) | offset;
+        }
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}.
+     */
+    private final class EntryIterator extends AbstractSlotIterator<LongIntCursor>
+    {
+        private final LongIntCursor cursor = new LongIntCursor();
+
+        @Override
+        protected LongIntCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = index();
+            cursor.key = keys[page][offset];
+            cursor.value = values[page][offset];
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<LongIntCursor> iterator()
+    {
+        return new EntryIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        final long [][] keys = this.keys;
+        final int [][] values = this.values;
+        final boolean [][] states = this.allocated;
+
+        for (int p = 0; p < states.length; p++)
+        {
+            final long [] pageKeys = keys[p];
+            final int [] pageValues = values[p];
+            final boolean [] pageStates = states[p];
+            for (int i = 0; i < pageStates.length; i++)
+            {
+                if (pageStates[i])
+                    procedure.apply(pageKeys[i], pageValues[i]);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Returns a specialized view of the keys of this associated container.
+     * The view additionally implements {@link LongLookupContainer}.
+     */
+    public KeysContainer keys()
+    {
+        return new KeysContainer();
+    }
+
+    /**
+     * A view of the keys inside this hash map.
+     */
+    public final class KeysContainer
+            extends AbstractLongCollection implements LongLookupContainer
+    {
+        private final LongIntPagedOpenHashMap owner =
+                LongIntPagedOpenHashMap.this;
+
+        @Override
+        public boolean contains(long e)
+        {
+            return containsKey(e);
+        }
+
+        @Override
+        public <T extends LongProcedure> T forEach(final T procedure)
+        {
+            owner.forEach(new LongIntProcedure()
+            {
+                public void apply(long key, int value)
+                {
+                    procedure.apply(key);
+                }
+            });
+            return procedure;
+        }
+
+        @Override
+        public <T extends LongPredicate> T forEach(T predicate)
+        {
+            for (LongCursor c : this)
+            {
+                if (!predicate.apply(c.value))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return owner.isEmpty();
+        }
+
+        @Override
+        public Iterator<LongCursor> iterator()
+        {
+            return new KeysIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return owner.size();
+        }
+
+        @Override
+        public void clear()
+        {
+            owner.clear();
+        }
+
+        @Override
+        public int removeAll(LongPredicate predicate)
+        {
+            return owner.removeAll(predicate);
+        }
+
+        @Override
+        public int removeAllOccurrences(final long e)
+        {
+            final boolean hasKey = owner.containsKey(e);
+            int result = 0;
+            if (hasKey)
+            {
+                owner.remove(e);
+                result = 1;
+            }
+            return result;
+        }
+    };
+
+    /**
+     * An iterator over the set of assigned keys.
+     */
+    private final class KeysIterator extends AbstractSlotIterator<LongCursor>
+    {
+        private final LongCursor cursor = new LongCursor();
+
+        @Override
+        protected LongCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = index();
+            cursor.value = keys[page][offset];
+            return cursor;
+        }
+    }
+
+    /**
+     * @return Returns a container with all values stored in this map.
+     */
+    @Override
+    public IntContainer values()
+    {
+        return new ValuesContainer();
+    }
+
+    /**
+     * A view over the set of values of this map.
+     */
+    private final class ValuesContainer extends AbstractIntCollection
+    {
+        @Override
+        public int size()
+        {
+            return LongIntPagedOpenHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return LongIntPagedOpenHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(int value)
+        {
+            // This is a linear scan over the values, but it's in the contract, so be it.
+            final boolean [][] states = LongIntPagedOpenHashMap.this.allocated;
+            final int [][] values = LongIntPagedOpenHashMap.this.values;
+
+            for (int p = 0; p < states.length; p++)
+            {
+                final boolean [] pageStates = states[p];
+                final int [] pageValues = values[p];
+                for (int i = 0; i < pageStates.length; i++)
+                {
+                    if (pageStates[i] && ((value) == (pageValues[i])))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public <T extends IntProcedure> T forEach(final T procedure)
+        {
+            LongIntPagedOpenHashMap.this.forEach(new LongIntProcedure()
+            {
+                public void apply(long key, int value)
+                {
+                    procedure.apply(value);
+                }
+            });
+            return procedure;
+        }
+
+        @Override
+        public <T extends IntPredicate> T forEach(T predicate)
+        {
+            for (IntCursor c : this)
+            {
+                if (!predicate.apply(c.value))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public Iterator<IntCursor> iterator()
+        {
+            return new ValuesIterator();
+        }
+
+        @Override
+        public int removeAllOccurrences(int e)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int removeAll(IntPredicate predicate)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An iterator over the set of assigned values.
+     */
+    private final class ValuesIterator extends AbstractSlotIterator<IntCursor>
+    {
+        private final IntCursor cursor = new IntCursor();
+
+        @Override
+        protected IntCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = index();
+            cursor.value = values[page][offset];
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntPagedOpenHashMap clone()
+    {
+        try
+        {
+            LongIntPagedOpenHashMap cloned =
+                    (LongIntPagedOpenHashMap) super.clone();
+
+            cloned.keys = keys.clone();
+            cloned.values = values.clone();
+            cloned.allocated = allocated.clone();
+            for (int p = 0; p < allocated.length; p++)
+            {
+                cloned.keys[p] = keys[p].clone();
+                cloned.values[p] = values[p].clone();
+                cloned.allocated[p] = allocated[p].clone();
+            }
+            cloned.lastSlot = -1;
+
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        boolean first = true;
+        for (LongIntCursor cursor : this)
+        {
+            if (!first) buffer.append(", ");
+            buffer.append(cursor.key);
+            buffer.append("=>");
+            buffer.append(cursor.value);
+            first = false;
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Round the capacity to the next allowed value.
+     */
+    protected long roundCapacity(long requestedCapacity)
+    {
+        if (requestedCapacity > MAX_CAPACITY)
+            return MAX_CAPACITY;
+
+        return Math.max(MIN_CAPACITY, Long.highestOneBit(requestedCapacity - 1) << 1);
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs.
+     */
+    public static LongIntPagedOpenHashMap from(long [] keys, int [] values)
+    {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+
+        LongIntPagedOpenHashMap map = new LongIntPagedOpenHashMap();
+        for (int i = 0; i < keys.length; i++)
+        {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Create a hash map from another associative container.
+     */
+    public static LongIntPagedOpenHashMap from(LongIntAssociativeContainer container)
+    {
+        return new LongIntPagedOpenHashMap(container);
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static LongIntPagedOpenHashMap newInstance()
+    {
+        return new LongIntPagedOpenHashMap();
+    }
+}
@@ -0,0 +1,1234 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.cursors.*;
+import com.carrotsearch.hppc.predicates.*;
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * A hash map of <code>long</code> to <code>int</code> that stores keys split into a
+ * 32-bit prefix (the high-order bits) and a 32-bit suffix (the low-order bits).
+ *
+ * <p>
+ * Entries sharing the same prefix are kept in a single {@link Bucket}: an open
+ * addressing table with linear probing (exactly like {@link LongIntOpenHashMap}) that
+ * stores only the <code>int</code> suffix of each key. Buckets are looked up by their
+ * prefix; the most recently used bucket is cached, so runs of keys with the same
+ * high-order bits (timestamps, shard identifiers) do not pay for the prefix lookup at all.
+ * </p>
+ *
+ * <p>
+ * When keys are clustered (few distinct prefixes, many keys per prefix), the key
+ * storage is roughly half of that of {@link LongIntOpenHashMap}. When keys are
+ * uniformly distributed over the full <code>long</code> range each key ends up in its own
+ * bucket and this map is considerably <b>less</b> efficient; use {@link LongIntOpenHashMap}
+ * then.
+ * </p>
+ *
+ * @see LongIntOpenHashMap
+ */
+public class LongIntPrefixOpenHashMap
+        implements LongIntMap, Cloneable, Serializable
+{
+    /**
+     * Default capacity of a single prefix bucket.
+     */
+    public final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Minimum capacity of a single prefix bucket.
+     */
+    public final static int MIN_CAPACITY = 4;
+
+    /**
+     * Default load factor.
+     */
+    public final static float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * An open-addressing table of all keys sharing a single 32-bit prefix.
+     */
+    public final static class Bucket implements Cloneable, Serializable
+    {
+        /**
+         * The high-order 32 bits shared by all keys in this bucket.
+         */
+        public final int prefix;
+
+        /**
+         * Hash-indexed array holding the low-order 32 bits of all keys.
+         */
+        public int [] keys;
+
+        /**
+         * Hash-indexed array holding all values associated to the keys
+         * stored in {@link #keys}.
+         */
+        public int [] values;
+
+        /**
+         * Information if an entry (slot) in the {@link #values} table is allocated
+         * or empty.
+         */
+        public boolean [] allocated;
+
+        /**
+         * Cached number of assigned slots in {@link #allocated}.
+         */
+        public int assigned;
+
+        /**
+         * Cached capacity threshold at which we must resize the buffers.
+         */
+        private int resizeThreshold;
+
+        private final float loadFactor;
+
+        Bucket(int prefix, int initialCapacity, float loadFactor)
+        {
+            this.prefix = prefix;
+            this.loadFactor = loadFactor;
+            allocateBuffers(roundCapacity(initialCapacity));
+        }
+
+        /**
+         * Returns the full <code>long</code> key stored at the given slot.
+         */
+        public long keyAt(int slot)
+        {
+            return toKey(prefix, keys[slot]);
+        }
+
+        int put(int suffix, int value)
+        {
+            if (assigned >= resizeThreshold)
+                expandAndRehash();
+
+            final int mask = allocated.length - 1;
+            int slot = rehash(suffix) & mask;
+            while (allocated[slot])
+            {
+                if (((suffix) == (keys[slot])))
+                {
+                    final int oldValue = values[slot];
+                    values[slot] = value;
+                    return oldValue;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            assigned++;
+            allocated[slot] = true;
+            keys[slot] = suffix;
+            values[slot] = value;
+            return ((int) 0);
+        }
+
+        int putOrAdd(int suffix, int putValue, int additionValue)
+        {
+            if (assigned >= resizeThreshold)
+                expandAndRehash();
+
+            final int mask = allocated.length - 1;
+            int slot = rehash(suffix) & mask;
+            while (allocated[slot])
+            {
+                if (((suffix) == (keys[slot])))
+                {
+                    return values[slot] += additionValue;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            assigned++;
+            allocated[slot] = true;
+            keys[slot] = suffix;
+            return values[slot] = putValue;
+        }
+
+        /**
+         * @return Returns the slot of <code>suffix</code> or <code>-1</code> if not found.
+         */
+        int slotOf(int suffix)
+        {
+            final int mask = allocated.length - 1;
+            int slot = rehash(suffix) & mask;
+            while (allocated[slot])
+            {
+                if (((suffix) == (keys[slot])))
+                {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void removeAt(int slot)
+        {
+            assigned--;
+            shiftConflictingKeys(slot);
+        }
+
+        private void expandAndRehash()
+        {
+            final int [] oldKeys = this.keys;
+            final int [] oldValues = this.values;
+            final boolean [] oldStates = this.allocated;
+
+            assert assigned >= resizeThreshold;
+            allocateBuffers(oldKeys.length << 1);
+
+            final int mask = allocated.length - 1;
+            for (int i = 0; i < oldStates.length; i++)
+            {
+                if (oldStates[i])
+                {
+                    final int suffix = oldKeys[i];
+
+                    int slot = rehash(suffix) & mask;
+                    while (allocated[slot])
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+
+                    allocated[slot] = true;
+                    keys[slot] = suffix;
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private void allocateBuffers(int capacity)
+        {
+            this.keys = new int [capacity];
+            this.values = new int [capacity];
+            this.allocated = new boolean [capacity];
+
+            this.resizeThreshold = (int) (capacity * loadFactor);
+        }
+
+        private void shiftConflictingKeys(int slotCurr)
+        {
+            final int mask = allocated.length - 1;
+            int slotPrev, slotOther;
+            while (true)
+            {
+                slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+                while (allocated[slotCurr])
+                {
+                    slotOther = rehash(keys[slotCurr]) & mask;
+                    if (slotPrev <= slotCurr)
+                    {
+                        // we're on the right of the original slot.
+                        if (slotPrev >= slotOther || slotOther > slotCurr)
+                            break;
+                    }
+                    else
+                    {
+                        // we've wrapped around.
+                        if (slotPrev >= slotOther && slotOther > slotCurr)
+                            break;
+                    }
+                    slotCurr = (slotCurr + 1) & mask;
+                }
+
+                if (!allocated[slotCurr])
+                    break;
+
+                // Shift key/value pair.
+                keys[slotPrev] = keys[slotCurr];
+                values[slotPrev] = values[slotCurr];
+            }
+
+            allocated[slotPrev] = false;
+        }
+
+        private static int roundCapacity(int requestedCapacity)
+        {
+            if (requestedCapacity > (0x80000000 >>> 1))
+                return (0x80000000 >>> 1);
+
+            return Math.max(MIN_CAPACITY, BitUtil.nextHighestPowerOfTwo(requestedCapacity));
+        }
+
+        @Override
+        public Bucket clone()
+        {
+            try
+            {
+                Bucket cloned = (Bucket) super.clone();
+                cloned.keys = keys.clone();
+                cloned.values = values.clone();
+                cloned.allocated = allocated.clone();
+                return cloned;
+            }
+            catch (CloneNotSupportedException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Hash-indexed array holding the prefixes of all {@link #buckets}.
+     */
+    public int [] prefixes;
+
+    /**
+     * Hash-indexed array of buckets, <code>null</code> marks an empty slot.
+     *
+     * @see #prefixes
+     */
+    public Bucket [] buckets;
+
+    /**
+     * Number of non-empty slots in {@link #buckets}.
+     */
+    public int bucketCount;
+
+    /**
+     * Cached capacity threshold at which we must resize {@link #buckets}.
+     */
+    private int bucketResizeThreshold;
+
+    /**
+     * Total number of keys in all buckets.
+     */
+    public int assigned;
+
+    /**
+     * The load factor used for all buckets.
+     */
+    public final float loadFactor;
+
+    /**
+     * Initial capacity of a newly created bucket.
+     */
+    private final int bucketCapacity;
+
+    /**
+     * The most recently accessed bucket (or <code>null</code>), tried first by all
+     * lookups.
+     */
+    private transient Bucket lastBucket;
+
+    /**
+     * The bucket of the most recent {@link #containsKey} hit (required for
+     * {@link #lget}) or <code>null</code>. Kept apart from {@link #lastBucket}, which
+     * other lookups move.
+     */
+    private transient Bucket lastSlotBucket;
+
+    /**
+     * The slot of the most recent {@link #containsKey} hit within
+     * {@link #lastSlotBucket}.
+     */
+    private transient int lastSlot;
+
+    /**
+     * Creates a hash map with the default bucket capacity of {@value #DEFAULT_CAPACITY},
+     * load factor of {@value #DEFAULT_LOAD_FACTOR}.
+     */
+    public LongIntPrefixOpenHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a hash map with the given initial bucket capacity, default load factor of
+     * {@value #DEFAULT_LOAD_FACTOR}.
+     *
+     * @param bucketCapacity Initial capacity of each prefix bucket (greater than zero and
+     *            automatically rounded to the next power of two).
+     */
+    public LongIntPrefixOpenHashMap(int bucketCapacity)
+    {
+        this(bucketCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a hash map with the given initial bucket capacity and load factor.
+     *
+     * @param bucketCapacity Initial capacity of each prefix bucket (greater than zero and
+     *            automatically rounded to the next power of two).
+     *
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public LongIntPrefixOpenHashMap(int bucketCapacity, float loadFactor)
+    {
+        bucketCapacity = Math.max(bucketCapacity, MIN_CAPACITY);
+
+        assert bucketCapacity > 0
+                : "Initial capacity must be between (0, " + Integer.MAX_VALUE + "].";
+        assert loadFactor > 0 && loadFactor <= 1
+                : "Load factor must be between (0, 1].";
+
+        this.loadFactor = loadFactor;
+        this.bucketCapacity = bucketCapacity;
+        allocateBucketIndex(MIN_CAPACITY);
+    }
+
+    /**
+     * Create a hash map from all key-value pairs of another container.
+     */
+    public LongIntPrefixOpenHashMap(LongIntAssociativeContainer container)
+    {
+        this();
+        putAll(container);
+    }
+
+    static int prefixOf(long key)
+    {
+        return (int) (key >>> 32);
+    }
+
+    static int suffixOf(long key)
+    {
+        return (int) key;
+    }
+
+    static long toKey(int prefix, int suffix)
+    {
+        return ((long) prefix << 32) | (suffix & 0xffffffffL);
+    }
+
+    /**
+     * Return the bucket for the given prefix or <code>null</code>.
+     */
+    private Bucket bucketFor(int prefix)
+    {
+        final Bucket last = this.lastBucket;
+        if (last != null && last.prefix == prefix)
+            return last;
+
+        final Bucket [] buckets = this.buckets;
+        final int mask = buckets.length - 1;
+        int slot = rehash(prefix) & mask;
+        while (buckets[slot] != null)
+        {
+            if (prefixes[slot] == prefix)
+            {
+                return lastBucket = buckets[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Return the bucket for the given prefix, creating it if needed.
+     */
+    private Bucket bucketForUpdate(int prefix)
+    {
+        Bucket bucket = bucketFor(prefix);
+        if (bucket == null)
+        {
+            if (bucketCount >= bucketResizeThreshold)
+                expandBucketIndex();
+
+            bucket = new Bucket(prefix, bucketCapacity, loadFactor);
+            insertBucket(bucket);
+            bucketCount++;
+            lastBucket = bucket;
+        }
+        return bucket;
+    }
+
+    private void insertBucket(Bucket bucket)
+    {
+        final int mask = buckets.length - 1;
+        int slot = rehash(bucket.prefix) & mask;
+        while (buckets[slot] != null)
+        {
+            slot = (slot + 1) & mask;
+        }
+        prefixes[slot] = bucket.prefix;
+        buckets[slot] = bucket;
+    }
+
+    private void expandBucketIndex()
+    {
+        final Bucket [] oldBuckets = this.buckets;
+        allocateBucketIndex(oldBuckets.length << 1);
+        for (int i = 0; i < oldBuckets.length; i++)
+        {
+            if (oldBuckets[i] != null)
+                insertBucket(oldBuckets[i]);
+        }
+    }
+
+    private void allocateBucketIndex(int capacity)
+    {
+        this.prefixes = new int [capacity];
+        this.buckets = new Bucket [capacity];
+        this.bucketResizeThreshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Drop a bucket once its last key has been removed.
+     */
+    private void releaseIfEmpty(Bucket bucket)
+    {
+        if (bucket.assigned != 0)
+            return;
+
+        if (lastBucket == bucket)
+            lastBucket = null;
+
+        final Bucket [] buckets = this.buckets;
+        final int mask = buckets.length - 1;
+        int slotCurr = rehash(bucket.prefix) & mask;
+        while (buckets[slotCurr] != bucket)
+        {
+            slotCurr = (slotCurr + 1) & mask;
+        }
+
+        // Shift conflicting buckets, as in LongIntOpenHashMap#shiftConflictingKeys.
+        int slotPrev, slotOther;
+        while (true)
+        {
+            slotCurr = ((slotPrev = slotCurr) + 1) & mask;
+
+            while (buckets[slotCurr] != null)
+            {
+                slotOther = rehash(prefixes[slotCurr]) & mask;
+                if (slotPrev <= slotCurr)
+                {
+                    if (slotPrev >= slotOther || slotOther > slotCurr)
+                        break;
+                }
+                else
+                {
+                    if (slotPrev >= slotOther && slotOther > slotCurr)
+                        break;
+                }
+                slotCurr = (slotCurr + 1) & mask;
+            }
+
+            if (buckets[slotCurr] == null)
+                break;
+
+            prefixes[slotPrev] = prefixes[slotCurr];
+            buckets[slotPrev] = buckets[slotCurr];
+        }
+
+        buckets[slotPrev] = null;
+        bucketCount--;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int put(long key, int value)
+    {
+        final Bucket bucket = bucketForUpdate(prefixOf(key));
+        final int before = bucket.assigned;
+        final int previous = bucket.put(suffixOf(key), value);
+        assigned += bucket.assigned - before;
+        lastSlotBucket = null;
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int putAll(
+            LongIntAssociativeContainer container)
+    {
+        final int count = this.assigned;
+        for (LongIntCursor c : container)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * Puts all key/value pairs from a given iterable into this map.
+     */
+    @Override
+    public final int putAll(
+            Iterable<? extends LongIntCursor> iterable)
+    {
+        final int count = this.assigned;
+        for (LongIntCursor c : iterable)
+        {
+            put(c.key, c.value);
+        }
+        return this.assigned - count;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putIfAbsent(long, int)}.
+     */
+    public final boolean putIfAbsent(long key, int value)
+    {
+        if (!containsKey(key))
+        {
+            put(key, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * An equivalent of {@link LongIntOpenHashMap#putOrAdd(long, int, int)}.
+     *
+     * @return Returns the current value associated with <code>key</code> (after changes).
+     */
+    public final int putOrAdd(long key, int putValue, int additionValue)
+    {
+        final Bucket bucket = bucketForUpdate(prefixOf(key));
+        final int before = bucket.assigned;
+        final int v = bucket.putOrAdd(suffixOf(key), putValue, additionValue);
+        assigned += bucket.assigned - before;
+        lastSlotBucket = null;
+        return v;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int remove(long key)
+    {
+        final Bucket bucket = bucketFor(prefixOf(key));
+        if (bucket != null)
+        {
+            final int slot = bucket.slotOf(suffixOf(key));
+            if (slot >= 0)
+            {
+                final int v = bucket.values[slot];
+                bucket.removeAt(slot);
+                assigned--;
+                lastSlotBucket = null;
+                releaseIfEmpty(bucket);
+                return v;
+            }
+        }
+        return ((int) 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongContainer container)
+    {
+        final int before = this.assigned;
+
+        for (LongCursor cursor : container)
+        {
+            remove(cursor.value);
+        }
+
+        return before - this.assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int removeAll(LongPredicate predicate)
+    {
+        final int before = this.assigned;
+
+        final Bucket [] buckets = this.buckets;
+        for (int b = 0; b < buckets.length;)
+        {
+            final Bucket bucket = buckets[b];
+            if (bucket != null)
+            {
+                final boolean [] states = bucket.allocated;
+                for (int i = 0; i < states.length;)
+                {
+                    if (states[i] && predicate.apply(bucket.keyAt(i)))
+                    {
+                        bucket.removeAt(i);
+                        assigned--;
+                        // Repeat the check for the same i.
+                        continue;
+                    }
+                    i++;
+                }
+
+                if (bucket.assigned == 0)
+                {
+                    releaseIfEmpty(bucket);
+                    // Another bucket may have been shifted into b.
+                    continue;
+                }
+            }
+            b++;
+        }
+
+        lastSlotBucket = null;
+        return before - this.assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int get(long key)
+    {
+        final Bucket bucket = bucketFor(prefixOf(key));
+        if (bucket != null)
+        {
+            final int slot = bucket.slotOf(suffixOf(key));
+            if (slot >= 0)
+                return bucket.values[slot];
+        }
+        return ((int) 0);
+    }
+
+    /**
+     * Returns the last value saved in a call to {@link #containsKey}.
+     *
+     * @see #containsKey
+     */
+    public int lget()
+    {
+        assert lastSlotBucket != null : "Call containsKey() first.";
+        assert lastSlotBucket.allocated[lastSlot] : "Last call to exists did not have any associated value.";
+
+        return lastSlotBucket.values[lastSlot];
+    }
+
+    /**
+     * Sets the value corresponding to the key saved in the last
+     * call to {@link #containsKey}, if and only if the key exists
+     * in the map already.
+     *
+     * @see #containsKey
+     * @return Returns the previous value stored under the given key.
+     */
+    public int lset(int value)
+    {
+        assert lastSlotBucket != null : "Call containsKey() first.";
+        assert lastSlotBucket.allocated[lastSlot] : "Last call to exists did not have any associated value.";
+
+        final int previous = lastSlotBucket.values[lastSlot];
+        lastSlotBucket.values[lastSlot] = value;
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Saves the associated value for fast access using {@link #lget}
+     * or {@link #lset}.</p>
+     */
+    @Override
+    public boolean containsKey(long key)
+    {
+        final Bucket bucket = bucketFor(prefixOf(key));
+        if (bucket != null)
+        {
+            final int slot = bucket.slotOf(suffixOf(key));
+            if (slot >= 0)
+            {
+                lastSlotBucket = bucket;
+                lastSlot = slot;
+                return true;
+            }
+        }
+        lastSlotBucket = null;
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Releases all buckets.</p>
+     */
+    @Override
+    public void clear()
+    {
+        assigned = 0;
+        bucketCount = 0;
+        allocateBucketIndex(MIN_CAPACITY);
+        lastBucket = null;
+        lastSlotBucket = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return assigned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        int h = 0;
+        for (LongIntCursor c : this)
+        {
+            h += rehash(c.key) + rehash(c.value);
+        }
+        return h;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj != null)
+        {
+            if (obj == this) return true;
+
+            if (obj instanceof LongIntMap)
+            {
+                LongIntMap other = (LongIntMap) obj;
+                if (other.size() == this.size())
+                {
+                    for (LongIntCursor c : this)
+                    {
+                        if (other.containsKey(c.key))
+                        {
+                            int v = other.get(c.key);
+                            if (((c.value) == (v)))
+                            {
+                                continue;
+                            }
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An iterator over all buckets and their assigned slots. The cursor's index
+     * is the slot within the current bucket.
+     */
+    private abstract class AbstractSlotIterator<E> extends AbstractIterator<E>
+    {
+        private final Bucket [] buckets = LongIntPrefixOpenHashMap.this.buckets;
+
+        private int bucketIndex = -1;
+        protected Bucket bucket;
+        protected int slot = -1;
+
+        /**
+         * Advance to the next assigned slot.
+         *
+         * @return <code>false</code> if there are no more slots.
+         */
+        protected final boolean advance()
+        {
+            while (true)
+            {
+                if (bucket != null)
+                {
+                    final boolean [] states = bucket.allocated;
+                    int i = slot + 1;
+                    while (i < states.length && !states[i])
+                        i++;
+
+                    if (i < states.length)
+                    {
+                        slot = i;
+                        return true;
+                    }
+                }
+
+                int b = bucketIndex + 1;
+                while (b < buckets.length && buckets[b] == null)
+                    b++;
+                if (b == buckets.length)
+                    return false;
+
+                bucketIndex = b;
+                bucket = buckets[b];
+                slot = -1;
+            }
+        }
+    }
+
+    /**
+     * An iterator implementation for {@link #iterator}.
+     */
+    private final class EntryIterator extends AbstractSlotIterator<LongIntCursor>
+    {
+        private final LongIntCursor cursor = new LongIntCursor();
+
+        @Override
+        protected LongIntCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = slot;
+            cursor.key = bucket.keyAt(slot);
+            cursor.value = bucket.values[slot];
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<LongIntCursor> iterator()
+    {
+        return new EntryIterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        final Bucket [] buckets = this.buckets;
+
+        for (int b = 0; b < buckets.length; b++)
+        {
+            final Bucket bucket = buckets[b];
+            if (bucket == null)
+                continue;
+
+            final long high = (long) bucket.prefix << 32;
+            final int [] keys = bucket.keys;
+            final int [] values = bucket.values;
+            final boolean [] states = bucket.allocated;
+            for (int i = 0; i < states.length; i++)
+            {
+                if (states[i])
+                    procedure.apply(high | (keys[i] & 0xffffffffL), values[i]);
+            }
+        }
+
+        return procedure;
+    }
+
+    /**
+     * Returns a specialized view of the keys of this associated container.
+     * The view additionally implements {@link LongLookupContainer}.
+     */
+    public KeysContainer keys()
+    {
+        return new KeysContainer();
+    }
+
+    /**
+     * A view of the keys inside this hash map.
+     */
+    public final class KeysContainer
+            extends AbstractLongCollection implements LongLookupContainer
+    {
+        private final LongIntPrefixOpenHashMap owner =
+                LongIntPrefixOpenHashMap.this;
+
+        @Override
+        public boolean contains(long e)
+        {
+            return containsKey(e);
+        }
+
+        @Override
+        public <T extends LongProcedure> T forEach(final T procedure)
+        {
+            owner.forEach(new LongIntProcedure()
+            {
+                public void apply(long key, int value)
+                {
+                    procedure.apply(key);
+                }
+            });
+            return procedure;
+        }
+
+        @Override
+        public <T extends LongPredicate> T forEach(T predicate)
+        {
+            for (LongCursor c : this)
+            {
+                if (!predicate.apply(c.value))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return owner.isEmpty();
+        }
+
+        @Override
+        public Iterator<LongCursor> iterator()
+        {
+            return new KeysIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return owner.size();
+        }
+
+        @Override
+        public void clear()
+        {
+            owner.clear();
+        }
+
+        @Override
+        public int removeAll(LongPredicate predicate)
+        {
+            return owner.removeAll(predicate);
+        }
+
+        @Override
+        public int removeAllOccurrences(final long e)
+        {
+            final boolean hasKey = owner.containsKey(e);
+            int result = 0;
+            if (hasKey)
+            {
+                owner.remove(e);
+                result = 1;
+            }
+            return result;
+        }
+    };
+
+    /**
+     * An iterator over the set of assigned keys.
+     */
+    private final class KeysIterator extends AbstractSlotIterator<LongCursor>
+    {
+        private final LongCursor cursor = new LongCursor();
+
+        @Override
+        protected LongCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = slot;
+            cursor.value = bucket.keyAt(slot);
+            return cursor;
+        }
+    }
+
+    /**
+     * @return Returns a container with all values stored in this map.
+     */
+    @Override
+    public IntContainer values()
+    {
+        return new ValuesContainer();
+    }
+
+    /**
+     * A view over the set of values of this map.
+     */
+    private final class ValuesContainer extends AbstractIntCollection
+    {
+        @Override
+        public int size()
+        {
+            return LongIntPrefixOpenHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return LongIntPrefixOpenHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(int value)
+        {
+            // This is a linear scan over the values, but it's in the contract, so be it.
+            for (IntCursor c : this)
+            {
+                if (((value) == (c.value)))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public <T extends IntProcedure> T forEach(final T procedure)
+        {
+            LongIntPrefixOpenHashMap.this.forEach(new LongIntProcedure()
+            {
+                public void apply(long key, int value)
+                {
+                    procedure.apply(value);
+                }
+            });
+            return procedure;
+        }
+
+        @Override
+        public <T extends IntPredicate> T forEach(T predicate)
+        {
+            for (IntCursor c : this)
+            {
+                if (!predicate.apply(c.value))
+                    break;
+            }
+            return predicate;
+        }
+
+        @Override
+        public Iterator<IntCursor> iterator()
+        {
+            return new ValuesIterator();
+        }
+
+        @Override
+        public int removeAllOccurrences(int e)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int removeAll(IntPredicate predicate)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An iterator over the set of assigned values.
+     */
+    private final class ValuesIterator extends AbstractSlotIterator<IntCursor>
+    {
+        private final IntCursor cursor = new IntCursor();
+
+        @Override
+        protected IntCursor fetch()
+        {
+            if (!advance())
+                return done();
+
+            cursor.index = slot;
+            cursor.value = bucket.values[slot];
+            return cursor;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntPrefixOpenHashMap clone()
+    {
+        try
+        {
+            LongIntPrefixOpenHashMap cloned =
+                    (LongIntPrefixOpenHashMap) super.clone();
+
+            cloned.prefixes = prefixes.clone();
+            cloned.buckets = buckets.clone();
+            for (int i = 0; i < cloned.buckets.length; i++)
+            {
+                if (cloned.buckets[i] != null)
+                    cloned.buckets[i] = cloned.buckets[i].clone();
+            }
+            cloned.lastBucket = null;
+            cloned.lastSlotBucket = null;
+
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the contents of this map to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+
+        boolean first = true;
+        for (LongIntCursor cursor : this)
+        {
+            if (!first) buffer.append(", ");
+            buffer.append(cursor.key);
+            buffer.append("=>");
+            buffer.append(cursor.value);
+            first = false;
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Creates a hash map from two index-aligned arrays of key-value pairs.
+     */
+    public static LongIntPrefixOpenHashMap from(long [] keys, int [] values)
+    {
+        if (keys.length != values.length)
+            throw new IllegalArgumentException("Arrays of keys and values must have an identical length.");
+
+        LongIntPrefixOpenHashMap map = new LongIntPrefixOpenHashMap();
+        for (int i = 0; i < keys.length; i++)
+        {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Create a hash map from another associative container.
+     */
+    public static LongIntPrefixOpenHashMap from(LongIntAssociativeContainer container)
+    {
+        return new LongIntPrefixOpenHashMap(container);
+    }
+
+    /**
+     * Create a new hash map without providing the full generic signature (constructor
+     * shortcut).
+     */
+    public static LongIntPrefixOpenHashMap newInstance()
+    {
+        return new LongIntPrefixOpenHashMap();
+    }
+}
@@ -0,0 +1,426 @@
+package com.carrotsearch.hppc;
+
+import java.io.Serializable;
+import java.util.*;
+
+import com.carrotsearch.hppc.procedures.*;
+
+import static com.carrotsearch.hppc.Internals.*;
+
+/**
+ * Sliding time-window counters of <code>long</code> keys, implemented using open
+ * addressing with linear probing (see {@link LongIntOpenHashMap}).
+ *
+ * <p>
+ * The window is divided into {@link #bucketCount} buckets, each
+ * {@link #bucketWidth} time units wide. Every key owns a row of
+ * <code>bucketCount</code> counters stored inline in a single
+ * {@link #counts} array (row <code>slot</code> starts at
+ * <code>slot * bucketCount</code>), and a cached sum of that row in
+ * {@link #sums}. A read therefore costs a single probe regardless of the number of
+ * buckets.
+ * </p>
+ *
+ * <p>
+ * Moving the window forward is O(1): only the current epoch (bucket number) is
+ * updated. Each key remembers the epoch its row was last aligned to in
+ * {@link #epochs} and expired buckets are subtracted from the row lazily, the
+ * next time the key is accessed. Keys whose window sum dropped to zero keep their
+ * slot until {@link #purge()} is called.
+ * </p>
+ */
+public class LongIntWindowCounter implements Cloneable, Serializable
+{
+    /**
+     * Default capacity.
+     */
+    public final static int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Default load factor.
+     */
+    public final static float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Hash-indexed array holding all keys.
+     */
+    public long [] keys;
+
+    /**
+     * Hash-indexed rows of per-bucket counters, {@link #bucketCount} per slot.
+     */
+    public int [] counts;
+
+    /**
+     * Hash-indexed cached sum of each counter row.
+     */
+    public int [] sums;
+
+    /**
+     * Hash-indexed epoch each counter row is aligned to.
+     */
+    public long [] epochs;
+
+    /**
+     * Information if an entry (slot) in the {@link #keys} table is allocated
+     * or empty.
+     */
+    public boolean [] allocated;
+
+    /**
+     * Cached number of assigned slots in {@link #allocated}.
+     */
+    public int assigned;
+
+    /**
+     * Number of buckets in the window.
+     */
+    public final int bucketCount;
+
+    /**
+     * Width of a single bucket, in timestamp units.
+     */
+    public final long bucketWidth;
+
+    /**
+     * The load factor for this map.
+     */
+    public final float loadFactor;
+
+    /**
+     * Cached capacity threshold at which we must resize the buffers.
+     */
+    private int resizeThreshold;
+
+    /**
+     * The epoch (<code>timestamp / bucketWidth</code>) of the most recent bucket.
+     */
+    private long currentEpoch;
+
+    /**
+     * Creates a window counter with the default capacity of {@value #DEFAULT_CAPACITY}.
+     *
+     * @param bucketCount The number of buckets in the window (greater than zero).
+     * @param bucketWidth The width of a single bucket in timestamp units (greater than zero).
+     */
+    public LongIntWindowCounter(int bucketCount, long bucketWidth)
+    {
+        this(bucketCount, bucketWidth, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Creates a window counter.
+     *
+     * @param bucketCount The number of buckets in the window (greater than zero).
+     * @param bucketWidth The width of a single bucket in timestamp units (greater than zero).
+     * @param initialCapacity Initial capacity (greater than zero and automatically
+     *            rounded to the next power of two).
+     * @param loadFactor The load factor (greater than zero and smaller than 1).
+     */
+    public LongIntWindowCounter(int bucketCount, long bucketWidth,
+                                int initialCapacity, float loadFactor)
+    {
+        assert bucketCount > 0 : "Bucket count must be greater than zero.";
+        assert bucketWidth > 0 : "Bucket width must be greater than zero.";
+        assert loadFactor > 0 && loadFactor <= 1
+                : "Load factor must be between (0, 1].";
+
+        this.bucketCount = bucketCount;
+        this.bucketWidth = bucketWidth;
+        this.loadFactor = loadFactor;
+        allocateBuffers(roundCapacity(Math.max(initialCapacity, LongIntOpenHashMap.MIN_CAPACITY)));
+    }
+
+    /**
+     * Add <code>delta</code> to the bucket of <code>key</code> containing
+     * <code>timestamp</code>. A timestamp newer than any seen so far moves the
+     * window forward; a timestamp older than the window is ignored.
+     *
+     * @param timestamp A non-negative timestamp.
+     * @return Returns the sum of <code>key</code> over the window (after changes).
+     */
+    public int increment(long key, int delta, long timestamp)
+    {
+        assert timestamp >= 0 : "Timestamps must not be negative.";
+
+        final long epoch = timestamp / bucketWidth;
+        if (epoch > currentEpoch)
+            currentEpoch = epoch;
+
+        if (epoch <= currentEpoch - bucketCount)
+            return sumOverWindow(key);
+
+        if (assigned >= resizeThreshold)
+            expandAndRehash();
+
+        final int mask = allocated.length - 1;
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                align(slot);
+                counts[slot * bucketCount + (int) (epoch % bucketCount)] += delta;
+                return sums[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        assigned++;
+        allocated[slot] = true;
+        keys[slot] = key;
+        epochs[slot] = currentEpoch;
+        final int row = slot * bucketCount;
+        Arrays.fill(counts, row, row + bucketCount, 0);
+        counts[row + (int) (epoch % bucketCount)] = delta;
+        return sums[slot] = delta;
+    }
+
+    /**
+     * @return Returns the sum of <code>key</code> over the current window or
+     * <code>0</code> if the key has no counts.
+     */
+    public int sumOverWindow(long key)
+    {
+        final int mask = allocated.length - 1;
+        int slot = rehash(key) & mask;
+        while (allocated[slot])
+        {
+            if (((key) == (keys[slot])))
+            {
+                align(slot);
+                return sums[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ((int) 0);
+    }
+
+    /**
+     * Move the window forward so that it ends at the bucket containing
+     * <code>timestamp</code>. Older timestamps are ignored. This is an O(1) operation.
+     */
+    public void advance(long timestamp)
+    {
+        assert timestamp >= 0 : "Timestamps must not be negative.";
+
+        final long epoch = timestamp / bucketWidth;
+        if (epoch > currentEpoch)
+            currentEpoch = epoch;
+    }
+
+    /**
+     * Subtract and clear all buckets of the row at <code>slot</code> that fell
+     * out of the window since the row was last aligned.
+     */
+    private void align(int slot)
+    {
+        final long from = epochs[slot];
+        final long to = currentEpoch;
+        if (from == to)
+            return;
+
+        final int row = slot * bucketCount;
+        if (to - from >= bucketCount)
+        {
+            Arrays.fill(counts, row, row + bucketCount, 0);
+            sums[slot] = 0;
+        }
+        else
+        {
+            int sum = sums[slot];
+            for (long e = from + 1; e <= to; e++)
+            {
+                final int i = row + (int) (e % bucketCount);
+                sum -= counts[i];
+                counts[i] = 0;
+            }
+            sums[slot] = sum;
+        }
+        epochs[slot] = to;
+    }
+
+    /**
+     * Applies <code>procedure</code> to all keys with a non-zero sum over the
+     * current window.
+     */
+    public <T extends LongIntProcedure> T forEach(T procedure)
+    {
+        final boolean [] states = this.allocated;
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+            {
+                align(i);
+                if (sums[i] != 0)
+                    procedure.apply(keys[i], sums[i]);
+            }
+        }
+        return procedure;
+    }
+
+    /**
+     * Release the slots of all keys whose sum over the current window is zero.
+     *
+     * @return Returns the number of released keys.
+     */
+    public int purge()
+    {
+        final int before = this.assigned;
+        final boolean [] states = this.allocated;
+        int live = 0;
+        for (int i = 0; i < states.length; i++)
+        {
+            if (states[i])
+            {
+                align(i);
+                if (sums[i] != 0)
+                    live++;
+            }
+        }
+
+        if (live != before)
+            rehashInto(roundCapacity(Math.max(LongIntOpenHashMap.MIN_CAPACITY,
+                    (int) Math.ceil(live / loadFactor) + 1)), true);
+        return before - this.assigned;
+    }
+
+    /**
+     * @return Returns the number of keys with a slot in this counter (including
+     * keys whose window sum dropped to zero, see {@link #purge()}).
+     */
+    public int size()
+    {
+        return assigned;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Remove all keys. Does not release internal buffers or reset the window.
+     */
+    public void clear()
+    {
+        assigned = 0;
+        Arrays.fill(allocated, false);
+    }
+
+    private void expandAndRehash()
+    {
+        assert assigned >= resizeThreshold;
+        assert ((allocated.length << 1) > 0)
+                : "Maximum capacity exceeded (" + (0x80000000 >>> 1) + ").";
+        rehashInto(allocated.length << 1, false);
+    }
+
+    /**
+     * Move all rows to buffers of the given capacity, optionally dropping rows
+     * with a zero sum (which must be aligned already).
+     */
+    private void rehashInto(int capacity, boolean dropEmpty)
+    {
+        final long [] oldKeys = this.keys;
+        final int [] oldCounts = this.counts;
+        final int [] oldSums = this.sums;
+        final long [] oldEpochs = this.epochs;
+        final boolean [] oldStates = this.allocated;
+
+        allocateBuffers(capacity);
+
+        final int mask = allocated.length - 1;
+        int count = 0;
+        for (int i = 0; i < oldStates.length; i++)
+        {
+            if (oldStates[i] && !(dropEmpty && oldSums[i] == 0))
+            {
+                final long key = oldKeys[i];
+
+                int slot = rehash(key) & mask;
+                while (allocated[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+
+                allocated[slot] = true;
+                keys[slot] = key;
+                sums[slot] = oldSums[i];
+                epochs[slot] = oldEpochs[i];
+                System.arraycopy(oldCounts, i * bucketCount, counts, slot * bucketCount, bucketCount);
+                count++;
+            }
+        }
+        this.assigned = count;
+    }
+
+    private void allocateBuffers(int capacity)
+    {
+        assert (long) capacity * bucketCount <= Integer.MAX_VALUE
+                : "Maximum capacity exceeded for " + bucketCount + " buckets.";
+
+        this.keys = new long [capacity];
+        this.counts = new int [capacity * bucketCount];
+        this.sums = new int [capacity];
+        this.epochs = new long [capacity];
+        this.allocated = new boolean [capacity];
+
+        this.resizeThreshold = (int) (capacity * loadFactor);
+    }
+
+    private static int roundCapacity(int requestedCapacity)
+    {
+        if (requestedCapacity > (0x80000000 >>> 1))
+            return (0x80000000 >>> 1);
+
+        return Math.max(LongIntOpenHashMap.MIN_CAPACITY, BitUtil.nextHighestPowerOfTwo(requestedCapacity));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongIntWindowCounter clone()
+    {
+        try
+        {
+            LongIntWindowCounter cloned = (LongIntWindowCounter) super.clone();
+            cloned.keys = keys.clone();
+            cloned.counts = counts.clone();
+            cloned.sums = sums.clone();
+            cloned.epochs = epochs.clone();
+            cloned.allocated = allocated.clone();
+            return cloned;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Convert the window sums of this counter to a human-friendly string.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+        forEach(new LongIntProcedure()
+        {
+            boolean first = true;
+
+            public void apply(long key, int value)
+            {
+                if (!first) buffer.append(", ");
+                buffer.append(key);
+                buffer.append("=>");
+                buffer.append(value);
+                first = false;
+            }
+        });
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,10 @@
+package com.carrotsearch.hppc.procedures;
+
+/**
+ * A procedure that applies to a <code>int</code> key and two <code>int</code>
+ * values associated with it (for example the values of the same key in two maps).
+ */
+public interface IntIntIntProcedure
+{
+    public void apply(int key, int value, int otherValue);
+}
@@ -0,0 +1,10 @@
+package com.carrotsearch.hppc.procedures;
+
+/**
+ * A procedure that applies to a <code>int</code> key and two <code>long</code>
+ * values associated with it (for example the values of the same key in two maps).
+ */
+public interface IntLongLongProcedure
+{
+    public void apply(int key, long value, long otherValue);
+}
@@ -0,0 +1,10 @@
+package com.carrotsearch.hppc.procedures;
+
+/**
+ * A procedure that applies to a <code>long</code> key and two <code>long</code>
+ * values associated with it (for example the values of the same key in two maps).
+ */
+public interface LongLongLongProcedure
+{
+    public void apply(long key, long value, long otherValue);
+}
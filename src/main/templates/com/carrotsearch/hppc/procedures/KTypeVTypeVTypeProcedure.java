@@ -0,0 +1,10 @@
+package com.carrotsearch.hppc.procedures;
+
+/**
+ * A procedure that applies to a <code>KType</code> key and two <code>VType</code>
+ * values associated with it (for example the values of the same key in two maps).
+ */
+public interface KTypeVTypeVTypeProcedure
+{
+    public void apply(KType key, VType value, VType otherValue);
+}